@@ -3,6 +3,22 @@
  * 1. Naive Approach - Involve 32 key searches in Hash table generated using all possible subnet mask(32)
  * 2. Trie Approach - Creates a binary bit tree of all the network prefix present in the routing table
  * 					  Perform Longest prefix matching between Ip address to be forwarded and Trie tree.
+ * 3. Multibit Trie Approach - Trie with configurable strides(e.g. 16-8-8) using controlled prefix expansion
+ * 4. DIR-24-8 Approach - 2^24 entry table indexed by top 24 bits with 256 entry blocks for longer prefixes
+ * 5. Flat Trie Approach - Binary trie stored in parallel int arrays(or off-heap ByteBuffer) with next hop ids
+ * 6. Parallel Trie Approach - Batch lookup on one shared Trie split across cores(fork-join)
+ * 7. Length Hash Approach - Binary search on prefix lengths over one int hash table per length(with markers)
+ * 8. Stream Approach - Trie lookup streaming the memory mapped test file in chunks
+ * 9. Live Approach - Trie lookups running while every route is withdrawn and added again
+ * 10. Cache Approach - Fixed size destination cache(CLOCK eviction) in front of the Trie
+ * 11. IPv6 Approach - Multibit trie over 128 bit addresses held as two longs(IPv6 input files)
+ * 12. ORTC Approach - Trie built from the minimal equivalent prefix set(Optimal Routing Table Constructor)
+ * 13. Tree Bitmap Approach - Stride 6 multibit trie with internal/child bitmaps and popcount indexing
+ * 14. Pipeline Approach - Reading, Trie lookup and writing on separate threads joined by bounded queues
+ * 15. Auto Approach - Engine picked by engine_selector from the table profile, a memory budget and timed samples
+ * 16. Bloom Hash Approach - One Bloom filter per prefix length in front of its int hash table, probing only filter hits
+ * 17. Interval Approach - Disjoint address ranges of the prefixes, branch-free binary search in Eytzinger order
+ * Multibit, DIR-24-8, Flat, Length Hash, ORTC, Tree Bitmap, Auto, Bloom Hash and Interval share one lookup driver over lpm_engine(engine_lookup)
  * 
  * Author: Ritvik Joshi	 
  */
@@ -11,20 +27,9 @@
 import java.util.*;
 import java.util.regex.Pattern;
 import java.io.*;
-
-/*
- * Value class
- * Stores value(Next hop, subnet mask) of routing table
- */
-class value{
-	String nexthop;
-	String subnet_mask;
-	
-	value(String nexthop,String subnet_mask){
-		this.nexthop=nexthop;
-		this.subnet_mask=subnet_mask;
-	}
-}
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntUnaryOperator;
 
 /*
  * Main Class
@@ -36,6 +41,20 @@ class value{
 public class Iplookup {
 	//Forwarding Hash table(Naive approach)
 	public static Hashtable<String,value> forwarding_table= new Hashtable<String,value>(); 
+	//Next hop ids shared by the forwarding table and every lookup structure
+	public static next_hop_table next_hops = new next_hop_table();
+	//lpm_engine names as printed with timings
+	static final Map<String,String> TITLES = new HashMap<String,String>();
+	static{
+		TITLES.put("trie","Trie");
+		TITLES.put("multibit","Multibit Trie");
+		TITLES.put("dir24","DIR-24-8");
+		TITLES.put("flat","Flat Trie");
+		TITLES.put("hash","Length Hash");
+		TITLES.put("bitmap","Tree Bitmap");
+		TITLES.put("bloom","Bloom Hash");
+		TITLES.put("interval","Interval Table");
+	}
 		
 	//Convert Ip address into Binary network prefix
 	public String get_bin_prefix(String input, int CIDR){
@@ -51,6 +70,84 @@ public class Iplookup {
 		return prefix;
 	}
 	
+	//Convert Ip address into 32 bit integer
+	public int get_int_addr(String input){
+		return parse_addr(input);
+	}
+	
+	/*
+	 * Parse dotted-quad Ip address into 32 bit integer
+	 * Reads characters in place, no Strings or arrays are created
+	 */
+	public static int parse_addr(CharSequence input){
+		return parse_addr(input,null,0,input.length());
+	}
+	
+	/*
+	 * Parse dotted-quad Ip address stored as ASCII bytes in buf[from..to)
+	 * Absolute reads, position of buf is not changed
+	 */
+	public static int parse_addr(ByteBuffer buf, int from, int to){
+		return parse_addr(null,buf,from,to);
+	}
+	
+	/*
+	 * Dotted-quad parser behind both entry points, reading input when it is given and buf otherwise
+	 * Errors name the text, or the byte offset in buf
+	 */
+	private static int parse_addr(CharSequence input, ByteBuffer buf, int from, int to){
+		int addr=0, octet=0, digits=0, dots=0;
+		for(int i=from;i<to;i++){
+			int c = input!=null ? input.charAt(i) : buf.get(i);
+			if(c=='.'){
+				if(digits==0 || ++dots>3){
+					throw invalid_addr(input,i);
+				}
+				addr = (addr<<8) | octet;
+				octet=0;
+				digits=0;
+			}else if(c>='0' && c<='9' && digits<3){
+				octet = octet*10+(c-'0');
+				digits++;
+				if(octet>255){
+					throw invalid_addr(input,i);
+				}
+			}else{
+				throw invalid_addr(input,i);
+			}
+		}
+		if(digits==0 || dots!=3){
+			throw invalid_addr(input,from);
+		}
+		return (addr<<8) | octet;
+	}
+	
+	private static NumberFormatException invalid_addr(CharSequence input, int at){
+		return new NumberFormatException(input!=null ? "Invalid Ip address :: "+input : "Invalid Ip address at byte "+at);
+	}
+	
+	//Convert 32 bit integer into dotted-quad Ip address
+	public static String get_dotted(int addr){
+		return (addr>>>24)+"."+((addr>>>16)&255)+"."+((addr>>>8)&255)+"."+(addr&255);
+	}
+	
+	//Write 32 bit integer as dotted-quad Ip address without creating a String
+	public static void write_addr(Writer w, int addr) throws IOException{
+		for(int shift=24;shift>=0;shift-=8){
+			int octet=(addr>>>shift)&255;
+			if(octet>=100){
+				w.write('0'+octet/100);
+			}
+			if(octet>=10){
+				w.write('0'+(octet/10)%10);
+			}
+			w.write('0'+octet%10);
+			if(shift>0){
+				w.write('.');
+			}
+		}
+	}
+	
 	//Converts CIDR into subnet mask
 	public String get_subnet_mask(int CIDR){
 		int fixed_width = (int)CIDR/8;
@@ -152,14 +249,35 @@ public class Iplookup {
 		
 	}
 	
+	/*
+	 * Naive longest prefix match of one Ip address
+	 * Returns matched network prefix or null
+	 */
+	public String naive_find(String ip, ArrayList<String> subnet){
+		//All possible subnet mask
+		for(int j=subnet.size()-1;j>=0;j--){
+			String key = getkey(ip,subnet.get(j));
+			//IP lookup
+			if(forwarding_table.containsKey(key)){
+				value val = forwarding_table.get(key);
+				//subnet list holds /1 to /32
+				String actual_key = getkey(ip,val.CIDR==0 ? "0.0.0.0" : subnet.get(val.CIDR-1));
+				if(actual_key.equals(key)){
+					return key;
+				}
+				
+			}
+		}
+		return null;
+	}
+	
 	/*
 	 * Naive lookup 
 	 * Perform IP look up using Naive approach  
+	 * Write result into outfile
 	 */
 	
-	@SuppressWarnings("unused")
-	public void naive_lookup(ArrayList<String> Test,ArrayList<String> subnet){
-		Iplookup Ip = new Iplookup();
+	public void naive_lookup(ArrayList<String> Test,ArrayList<String> subnet,String outfile){
 		int def_count=0;
 		int match_Count=0;
 		boolean first_flag=true;
@@ -171,30 +289,14 @@ public class Iplookup {
 			long startTime = System.currentTimeMillis();
 			//Input array
 			for(int i=0;i<Test.size();i++){
-				String longest_match=null;
-				String curr_subnet=null;
-				//All possible subnet mask
-				for(int j=subnet.size()-1;j>=0;j--){
-					String key = Ip.getkey(Test.get(i),subnet.get(j));
-					//IP lookup
-					if(forwarding_table.containsKey(key)){
-						value val = forwarding_table.get(key);
-						String actual_key = Ip.getkey(Test.get(i),val.subnet_mask);
-						if(actual_key.equals(key)){
-							longest_match=key;
-							curr_subnet=subnet.get(j);
-							break;
-						}
-						
-					}
-				}
+				String longest_match=naive_find(Test.get(i),subnet);
 				//IP look up not matched
 				if(longest_match==null){
 					//System.out.println("not matched"+Test.get(i));
 					def_count+=1;
 					out.add("255.255.255.255");
 				}else{
-					//System.out.println("Longest_prefix :: "+longest_match+" value:: "+Test.get(i)+" subnet:: "+curr_subnet);
+					//System.out.println("Longest_prefix :: "+longest_match+" value:: "+Test.get(i));
 					match_Count+=1;
 					out.add(longest_match);
 				}
@@ -215,7 +317,7 @@ public class Iplookup {
 		 System.out.println("*********************************************************");
 		 // Writing result into Output file
 		 try {
-			PrintWriter pw = new PrintWriter("C:\\Users\\ritvi\\workspace\\algos\\ComputerNetworks\\src\\lookup\\Naive_out","UTF-8");
+			PrintWriter pw = new PrintWriter(outfile,"UTF-8");
 			for(int i=0;i<Test.size();i++){
 				pw.println("IP :: "+Test.get(i)+" Nexthop :: "+out.get(i));
 			}
@@ -230,15 +332,16 @@ public class Iplookup {
 	}
 	/*
 	 * Trie lookup
-	 * Write result into Output file
+	 * Write result into outfile
 	 */
-	public void trie_lookup(ArrayList<String> Test){
+	public void trie_lookup(trie lp_trie, ArrayList<String> Test, String outfile){
 		@SuppressWarnings("unused")
 		int counter=0;
 		boolean first_flag=true;
-		trie lp_trie =  new trie();
-		//long startTime = System.currentTimeMillis();
+		long timeTaken=0;
 		for(int j=0;j<100;j++){	
+			//timed per iteration, a single lookup is far below millisecond resolution
+			long startTime = System.currentTimeMillis();
 			for(int i=0;i<Test.size();i++){
 				//String result=lp_trie.trie_lookup(Test.get(i));
 				lp_trie.trie_lookup(Test.get(i));
@@ -249,23 +352,24 @@ public class Iplookup {
 				out.add(result);
 				 */
 			}
+			long endTime = System.currentTimeMillis();
+			timeTaken+= endTime-startTime;
 			if(first_flag){
 				first_flag=false;
-				System.out.println("Trie Time taken(1 iterations):: " +lp_trie.time+"ms");
+				System.out.println("Trie Time taken(1 iterations):: " +timeTaken+"ms");
 				System.out.println("Mathced :: "+lp_trie.count+" default count ::"+(Test.size()-lp_trie.count));
 				System.out.println("*********************************************************");
 			}
 			
 		}
-		//long endTime = System.currentTimeMillis();
-		//long takenTime = endTime-startTime;
-		int takenTime = lp_trie.time;
-		//System.out.println("Start Time:: "+startTime+" End Time:: "+endTime+" Trie Time taken :: "+takenTime);
-		System.out.println("Trie Time taken(100 iterations):: " + takenTime+"ms");
+		System.out.println("Trie Time taken(100 iterations):: " + timeTaken+"ms");
 		System.out.println("Mathced :: "+lp_trie.count+" default count ::"+(Test.size()*100-lp_trie.count));
+		if(lp_trie.stats!=null){
+			lp_trie.stats.print_stats();
+		}
 		System.out.println("*********************************************************");
 		try {
-			PrintWriter pw = new PrintWriter("C:\\Users\\ritvi\\workspace\\algos\\ComputerNetworks\\src\\lookup\\Trie_out","UTF-8");
+			PrintWriter pw = new PrintWriter(outfile,"UTF-8");
 			for(int i=0;i<Test.size();i++){
 				pw.println("IP :: "+Test.get(i)+" Nexthop :: "+lp_trie.out.get(i));
 			}
@@ -278,206 +382,551 @@ public class Iplookup {
 		}
 	}
 	/*
-	 * Main function
-	 * Read Data from input file and test file
-	 * Calls lookup functions
+	 * Engine lookup
+	 * Times 100 iterations of any lpm_engine over the test set and prints its
+	 * description, memory compared with lp_trie when given, and extra(may be null)
+	 * Write result into outfile
 	 */
-	@SuppressWarnings({ "resource", "unused" })
-	public static void main(String args[]) throws FileNotFoundException{
-		Iplookup Ip = new Iplookup();
-		File filename = new File(args[0]);
-		Scanner in = new Scanner(filename);
-		ArrayList<String> all_subnet = new ArrayList<String>();
-		ArrayList<String> Test = new ArrayList<String>();
-		all_subnet = Ip.get_all_subnet_mask();
-		//System.out.println(all_subnet);
-		trie lp_trie =  new trie();
-		String temp="";
+	public void engine_lookup(lpm_engine engine, String title, String outfile, ArrayList<String> Test, trie lp_trie, String extra){
+		boolean first_flag=true;
 		int count=0;
-		//Reading Input Data 
-		while(in.hasNext()){	
-			String input= in.next();
-			String buffer[] = input.split("/");
-			int CIDR = Integer.parseInt(buffer[1]);
-			String subnet_mask =Ip.get_subnet_mask(CIDR);
-			String net_prefix=Ip.getkey(buffer[0],subnet_mask);
-			//System.out.println(input);
-			//System.out.println("Network prefix:: "+net_prefix);
-			//System.out.println("subnet mask   :: "+subnet_mask);
-			forwarding_table.put(net_prefix,new value(buffer[0],subnet_mask));
-			
-			String bin_prefix= Ip.get_bin_prefix(buffer[0],CIDR);
-			lp_trie.insert(bin_prefix,buffer[0]);
-			
+		long timeTaken=0;
+		int out[] = new int[Test.size()];
+		int addr[] = new int[Test.size()];
+		for(int i=0;i<Test.size();i++){
+			addr[i]=get_int_addr(Test.get(i));
 		}
-		//Reading Test data
-		File testfilename = new File(args[1]);
-		Scanner test = new Scanner(testfilename);
-		while(test.hasNext()){
-			Test.add(test.next());
+		//Iteration loop == 100
+		for(int j=0;j<100;j++){
+			long startTime = System.currentTimeMillis();
+			count+=engine.lookup(addr,out,addr.length);
+			long endTime = System.currentTimeMillis();
+			timeTaken+= endTime-startTime;
+			if(first_flag){
+				first_flag=false;
+				System.out.println(title+" Time taken(1 iterations):: "+timeTaken+"ms");
+				System.out.println("Mathced :: "+count+" default count ::"+(Test.size()-count));
+				System.out.println("*********************************************************");
+			}
+		}
+		System.out.println(title+" Time taken(100 iterations):: "+timeTaken+"ms");
+		System.out.println("Mathced :: "+count+" default count ::"+(Test.size()*100-count));
+		System.out.println(engine.describe());
+		//counted around the engine, or by the Trie itself with depths
+		lookup_stats stats = engine instanceof counting_engine ? ((counting_engine)engine).stats
+				: engine instanceof trie ? ((trie)engine).stats : null;
+		if(stats!=null){
+			stats.print_stats();
+		}
+		if(lp_trie!=null && engine!=lp_trie){
+			System.out.println("Trie memory :: "+lp_trie.footprint()/1024+"KB");
+		}
+		if(extra!=null){
+			System.out.println(extra);
+		}
+		System.out.println("*********************************************************");
+		try {
+			//a mapped snapshot brings its own next hop table
+			next_hop_table hops = engine.next_hops();
+			PrintWriter pw = new PrintWriter(outfile,"UTF-8");
+			for(int i=0;i<Test.size();i++){
+				pw.println("IP :: "+Test.get(i)+" Nexthop :: "+hops.get(out[i]));
+			}
+			pw.close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		//calling lookup function
-		Ip.trie_lookup(Test);
-		Ip.naive_lookup(Test,all_subnet);
 	}
-}
-
-/*
- * Trie Tree Node
- * Represents tree structure and values
- */
-class node{
-	node left;
-	node right;
-	String val;
-	boolean ind;
-	String next_hop;
-	String prefix;
-	
-	node(node left, node right,String val, boolean ind, String prefix,String next_hop){
-		this.left=left;
-		this.right=right;
-		this.ind=ind;
-		this.val=val;
-		this.next_hop =next_hop;
-		this.prefix=prefix;
-		
+	/*
+	 * Engine for the approaches that run one lpm_engine next to the Trie, null for the others
+	 * Its lookups are counted by a counting_engine around it
+	 */
+	public static lpm_engine create_engine(String mode, String option){
+		lpm_engine engine = null;
+		if(mode.equals("multibit")){
+			engine = new multibit_trie(multibit_trie.parse_strides(option!=null ? option : "16-8-8"));
+		}else if(mode.equals("save")){
+			engine = new flat_trie();
+		}else if(mode.equals("dir24") || mode.equals("flat") || mode.equals("hash") || mode.equals("bitmap")
+				|| mode.equals("bloom") || mode.equals("interval")){
+			engine = engine_selector.create(mode);
+			if(engine instanceof bloom_hash){
+				//filter counters are worth their cost only here
+				((bloom_hash)engine).count_stats=true;
+			}
+		}
+		return engine!=null ? new counting_engine(engine) : null;
 	}
-	
-}
-
-/*
- * Trie Class 
- * Create Binary tree to store network prefix in Bit format
- * Perform lookup operation
- * Display Tree
- * Tree Insertion
- */
-
-class trie{
-	public static node root=new node(null,null,"R",false,null,null);
-	public ArrayList<String> out = new ArrayList<String>();
-	public int time=0;
-	public int count=0;
-	
 	/*
-	 * Insert Ip address to Binary Tree
+	 * ORTC lookup
+	 * Compresses the routes into the minimal equivalent prefix set, builds a
+	 * second Trie from it and reports prefixes and nodes saved over lp_trie
+	 * Write result into Output file
 	 */
-	public void insert(String value,String next_hop){
-		String bin_val=value;
-		
-		node  temp =root;
-		//System.out.println("bin string:: "+bin_val+" length:: "+bin_val.length());
-		char []bin_val_array = bin_val.toCharArray();
-		
-		for (int i=0;i<bin_val_array.length;i++){
-			if(bin_val_array[i] == '1'){
-				if( temp.right!=null){
-					temp=temp.right;
-				}else{
-					temp.right = new node(null,null,"1",false,null,null); 
-					temp=temp.right;
-				}
+	public void ortc_lookup(ortc_compressor ortc, trie lp_trie, ArrayList<String> Test){
+		long startTime = System.currentTimeMillis();
+		ortc.compress();
+		trie ortc_trie = new trie();
+		for(int i=0;i<ortc.output_count;i++){
+			ortc_trie.insert(ortc.prefix[i],ortc.length[i],ortc.next_hop[i]);
+		}
+		long build = System.currentTimeMillis()-startTime;
+		ortc_trie.enable_stats("ortc");
+		int nodes = lp_trie.node_count(lp_trie.root);
+		int ortc_nodes = ortc_trie.node_count(ortc_trie.root);
+		engine_lookup(ortc_trie,"ORTC Trie","Ortc_out",Test,null,
+				"ORTC :: prefixes "+ortc.input_count+" -> "+ortc.output_count+" (saved "+(ortc.input_count-ortc.output_count)
+				+") nodes "+nodes+" -> "+ortc_nodes+" (saved "+(nodes-ortc_nodes)+") compress and build "+build+"ms");
+	}
+	/*
+	 * Parallel Trie lookup
+	 * Batch lookup of the whole test set on a fork-join pool sharing one Trie
+	 * Write result into Output file
+	 */
+	public void parallel_lookup(trie lp_trie, ArrayList<String> Test, int threads){
+		batch_lookup batch = new batch_lookup(lp_trie,threads);
+		boolean first_flag=true;
+		long timeTaken=0;
+		int out[] = new int[Test.size()];
+		int addr[] = new int[Test.size()];
+		for(int i=0;i<Test.size();i++){
+			addr[i]=get_int_addr(Test.get(i));
+		}
+		//Iteration loop == 100
+		for(int j=0;j<100;j++){
+			long startTime = System.currentTimeMillis();
+			batch.lookup(addr,out);
+			long endTime = System.currentTimeMillis();
+			timeTaken+= endTime-startTime;
+			if(first_flag){
+				first_flag=false;
+				System.out.println("Parallel Trie Time taken(1 iterations):: "+timeTaken+"ms");
+				System.out.println("Mathced :: "+batch.matched()+" default count ::"+(batch.lookups()-batch.matched()));
+				System.out.println("*********************************************************");
 			}
-			else{
-				if(temp.left!=null){
-					temp=temp.left;
+		}
+		System.out.println("Parallel Trie Time taken(100 iterations):: "+timeTaken+"ms ("+threads+" threads)");
+		System.out.println("Mathced :: "+batch.matched()+" default count ::"+(batch.lookups()-batch.matched()));
+		batch.print_stats();
+		System.out.println("*********************************************************");
+		batch.shutdown();
+		try {
+			PrintWriter pw = new PrintWriter("Parallel_out","UTF-8");
+			for(int i=0;i<Test.size();i++){
+				pw.println("IP :: "+Test.get(i)+" Nexthop :: "+next_hops.get(out[i]));
+			}
+			pw.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	/*
+	 * Stream lookup
+	 * Test file is memory mapped and looked up chunk by chunk on the Trie,
+	 * results are written as each chunk completes
+	 */
+	public void stream_lookup(final trie lp_trie, String testfile) throws IOException{
+		final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream("Stream_out"),"UTF-8"),1<<20);
+		final int out[] = new int[1<<16];
+		//lookup time and matched count
+		final long stats[] = new long[2];
+		long startTime = System.currentTimeMillis();
+		long total = mapped_loader.read_addresses(testfile,out.length,new mapped_loader.address_handler(){
+			public void addresses(int addr[], int count){
+				long st = System.nanoTime();
+				for(int i=0;i<count;i++){
+					out[i]=lp_trie.lookup(addr[i]);
+					if(out[i]!=next_hop_table.NO_ROUTE){
+						stats[1]++;
+					}
 				}
-				else{
-					temp.left=new node(null,null,"0",false,null,null);
-					temp=temp.left;
+				stats[0]+=System.nanoTime()-st;
+				try{
+					for(int i=0;i<count;i++){
+						bw.write("IP :: ");
+						write_addr(bw,addr[i]);
+						bw.write(" Nexthop :: ");
+						bw.write(next_hops.get(out[i]));
+						bw.newLine();
+					}
+				}catch(IOException e){
+					throw new UncheckedIOException(e);
 				}
 			}
+		});
+		bw.close();
+		long endTime = System.currentTimeMillis();
+		System.out.println("Stream Time taken(read, lookup, write):: "+(endTime-startTime)+"ms lookup only :: "+stats[0]/1000000+"ms");
+		System.out.println("Mathced :: "+stats[1]+" default count ::"+(total-stats[1]));
+		if(stats[0]>0){
+			System.out.println("Lookups :: "+total+" ("+String.format("%.2f",total*1000.0/stats[0])+" Mlookups/s)");
+		}
+		if(lp_trie.stats!=null){
+			lp_trie.stats.print_stats();
 		}
-		temp.ind=true;
-		temp.next_hop=next_hop;
-		temp.prefix = value;
-		//display(root);
+		System.out.println("*********************************************************");
+	}
+	/*
+	 * Pipeline lookup
+	 * Reader, lookup and writer stages of lookup_pipeline run concurrently on
+	 * the Trie, results go to outfile as text or csv
+	 */
+	public void pipeline_lookup(trie lp_trie, String testfile, String outfile, boolean csv) throws IOException{
+		lookup_pipeline pipeline = new lookup_pipeline(lp_trie);
+		long startTime = System.currentTimeMillis();
+		pipeline.run(testfile,outfile,csv);
+		long endTime = System.currentTimeMillis();
+		System.out.println("Pipeline Time taken(read, lookup, write):: "+(endTime-startTime)+"ms");
+		System.out.println("Mathced :: "+pipeline.matched+" default count ::"+(pipeline.lookups-pipeline.matched));
+		pipeline.print_stats();
+		System.out.println("Output :: "+outfile+(csv ? " (csv)" : ""));
+		if(lp_trie.stats!=null){
+			lp_trie.stats.print_stats();
+		}
+		System.out.println("*********************************************************");
 	}
-	
 	/*
-	 *Display Trie Tree 
+	 * IPv6 lookup
+	 * Loads IPv6 routes into an ipv6_trie and looks up every address of the
+	 * IPv6 test file, addresses stay as two longs from file to output
+	 * Write result into Output file
 	 */
-	public void display(node root){
-			System.out.println(" "+root.val);
-			if(root.ind){
-				System.out.println("Next hop::"+root.next_hop);
+	public void ipv6_lookup(String routefile, String testfile, int strides[]) throws IOException{
+		final ipv6_trie v6_trie = new ipv6_trie(strides);
+		long startTime = System.currentTimeMillis();
+		int routes = mapped_loader.read_routes6(routefile,new mapped_loader.route6_handler(){
+			public void route(long high, long low, int CIDR, String next_hop){
+				v6_trie.insert(high,low,CIDR,next_hop);
 			}
-			if(root.left!=null){
-				display(root.left);
+		});
+		//test addresses as high/low pairs
+		final long test[][] = {new long[1<<16]};
+		final int size[] = new int[1];
+		mapped_loader.read_addresses6(testfile,1<<16,new mapped_loader.address6_handler(){
+			public void addresses(long addr[], int count){
+				if(2*(size[0]+count)>test[0].length){
+					test[0] = Arrays.copyOf(test[0],Math.max(2*test[0].length,2*(size[0]+count)));
+				}
+				System.arraycopy(addr,0,test[0],2*size[0],2*count);
+				size[0]+=count;
 			}
-			if(root.right!=null){
-				display(root.right);
+		});
+		System.out.println("IPv6 routes loaded :: "+routes+" addresses :: "+size[0]+" in "+(System.currentTimeMillis()-startTime)+"ms");
+		long addr[] = test[0];
+		int n = size[0];
+		int out[] = new int[n];
+		boolean first_flag=true;
+		int count=0;
+		long timeTaken=0;
+		//Iteration loop == 100
+		for(int j=0;j<100;j++){
+			long st = System.nanoTime();
+			for(int i=0;i<n;i++){
+				int next_hop = v6_trie.lookup(addr[2*i],addr[2*i+1]);
+				out[i]=next_hop;
+				if(next_hop!=next_hop_table.NO_ROUTE){
+					count+=1;
+				}
 			}
-			
+			timeTaken+=System.nanoTime()-st;
+			if(first_flag){
+				first_flag=false;
+				System.out.println("IPv6 Trie Time taken(1 iterations):: "+timeTaken/1000000+"ms");
+				System.out.println("Mathced :: "+count+" default count ::"+(n-count));
+				System.out.println("*********************************************************");
+			}
+		}
+		System.out.println("IPv6 Trie Time taken(100 iterations):: "+timeTaken/1000000+"ms");
+		System.out.println("Mathced :: "+count+" default count ::"+((long)n*100-count));
+		if(timeTaken>0){
+			System.out.println("Lookups :: "+(long)n*100+" ("+String.format("%.2f",n*100*1000.0/timeTaken)+" Mlookups/s)");
+		}
+		System.out.println("Strides :: "+Arrays.toString(v6_trie.strides)+" nodes :: "+v6_trie.node_count
+				+" memory :: "+v6_trie.footprint()/1024+"KB");
+		System.out.println("*********************************************************");
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream("Ipv6_out"),"UTF-8"),1<<20);
+		for(int i=0;i<n;i++){
+			bw.write("IP :: ");
+			ipv6_trie.write_addr6(bw,addr[2*i],addr[2*i+1]);
+			bw.write(" Nexthop :: ");
+			bw.write(out[i]==next_hop_table.NO_ROUTE ? ipv6_trie.DEFAULT_HOP : next_hops.get(out[i]));
+			bw.newLine();
+		}
+		bw.close();
 	}
-	
 	/*
-	 * Perform Trie Lookup operation
-	 * finds Longest prefix Match for the binary input string present in the tree 
+	 * Live lookup
+	 * A lookup thread loops over the test set while this thread withdraws and
+	 * re-adds every route (route flap) on the same Trie
+	 * Write result into Output file
 	 */
-	public void trie_lookup(String input){
-		//System.out.println("Find String:: "+input);
-		String buffer[] = input.split("\\.");
-		String bin_val="";
-		
-		for(int i=0;i<buffer.length;i++){
-				bin_val+=String.format("%8s", Integer.toBinaryString(Integer.parseInt(buffer[i]))).replace(' ', '0');
+	public void live_lookup(final trie lp_trie, ArrayList<int[]> routes, ArrayList<String> route_hops, ArrayList<String> Test){
+		final int addr[] = new int[Test.size()];
+		for(int i=0;i<Test.size();i++){
+			addr[i]=get_int_addr(Test.get(i));
 		}
-		
-		node  temp =root;
-		//System.out.println("bin string:: "+bin_val+" length:: "+bin_val.length());
-		String longest_match=null;
-		String next_hop=null;
-		char []bin_val_array = bin_val.toCharArray();
-		long st = System.currentTimeMillis();
-		for (int i=0;i<bin_val_array.length;i++){
-			
-			
-			if(bin_val_array[i] == '1'){
-				if( temp.right!=null){
-					//System.out.println("Going right..."+bin_val_array[i]);
-					temp=temp.right;
-				}else{
-					break;
+		int before[] = new int[addr.length];
+		for(int i=0;i<addr.length;i++){
+			before[i]=lp_trie.lookup(addr[i]);
+		}
+		int nodes = lp_trie.node_count(lp_trie.root);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		//lookups and matches done by the lookup thread
+		final long lookups[] = new long[2];
+		Thread reader = new Thread(new Runnable(){
+			public void run(){
+				while(!stop.get()){
+					for(int i=0;i<addr.length;i++){
+						if(lp_trie.lookup(addr[i])!=next_hop_table.NO_ROUTE){
+							lookups[1]++;
+						}
+					}
+					lookups[0]+=addr.length;
 				}
 			}
-			else{
-				if(temp.left!=null){
-					//System.out.println("Going left..."+bin_val_array[i]);
-					temp=temp.left;
+		});
+		reader.start();
+		long startTime = System.currentTimeMillis();
+		int withdrawn=0;
+		for(int route[]: routes){
+			if(lp_trie.delete_route(route[0],route[1])){
+				withdrawn++;
+			}
+		}
+		int empty_nodes = lp_trie.node_count(lp_trie.root);
+		for(int i=0;i<routes.size();i++){
+			lp_trie.add_route(routes.get(i)[0],routes.get(i)[1],route_hops.get(i));
+		}
+		long endTime = System.currentTimeMillis();
+		stop.set(true);
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		int changed=0;
+		int out[] = new int[addr.length];
+		for(int i=0;i<addr.length;i++){
+			out[i]=lp_trie.lookup(addr[i]);
+			if(out[i]!=before[i]){
+				changed++;
+			}
+		}
+		System.out.println("Live Trie Time taken(withdraw and add "+routes.size()+" routes):: "+(endTime-startTime)+"ms");
+		System.out.println("Withdrawn :: "+withdrawn+" nodes before :: "+nodes+" after withdraw :: "+empty_nodes
+				+" after add :: "+lp_trie.node_count(lp_trie.root));
+		System.out.println("Lookups during updates :: "+lookups[0]+" results changed after flap :: "+changed);
+		System.out.println("*********************************************************");
+		try {
+			PrintWriter pw = new PrintWriter("Live_out","UTF-8");
+			for(int i=0;i<Test.size();i++){
+				pw.println("IP :: "+Test.get(i)+" Nexthop :: "+next_hops.get(out[i]));
+			}
+			pw.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	/*
+	 * Cache lookup
+	 * Trie lookup through a flow cache of the given number of entries
+	 * A route is withdrawn and added back between iterations to exercise invalidation
+	 * Write result into Output file
+	 */
+	public void cache_lookup(final trie lp_trie, ArrayList<int[]> routes, ArrayList<String> Test, int size){
+		flow_cache cache = new flow_cache(size,new IntUnaryOperator(){
+			public int applyAsInt(int addr){
+				return lp_trie.lookup(addr);
+			}
+		});
+		lp_trie.add_cache(cache);
+		boolean first_flag=true;
+		int count=0;
+		long timeTaken=0;
+		String out[] = new String[Test.size()];
+		int addr[] = new int[Test.size()];
+		for(int i=0;i<Test.size();i++){
+			addr[i]=get_int_addr(Test.get(i));
+		}
+		//Iteration loop == 100
+		for(int j=0;j<100;j++){
+			long startTime = System.currentTimeMillis();
+			for(int i=0;i<addr.length;i++){
+				int next_hop = cache.get(addr[i]);
+				out[i]=next_hops.get(next_hop);
+				if(next_hop!=next_hop_table.NO_ROUTE){
+					count+=1;
 				}
-				else{
-					break;
+			}
+			long endTime = System.currentTimeMillis();
+			timeTaken+= endTime-startTime;
+			if(first_flag){
+				first_flag=false;
+				System.out.println("Cache Time taken(1 iterations):: "+timeTaken+"ms");
+				System.out.println("Mathced :: "+count+" default count ::"+(Test.size()-count));
+				System.out.println("*********************************************************");
+			}
+			//route flap, every cached entry has to be looked up again
+			if(j%10==9 && routes.size()>0){
+				int route[] = routes.get(j%routes.size());
+				String next_hop = lp_trie.get_route(route[0],route[1]);
+				lp_trie.delete_route(route[0],route[1]);
+				lp_trie.add_route(route[0],route[1],next_hop);
+			}
+		}
+		System.out.println("Cache Time taken(100 iterations):: "+timeTaken+"ms");
+		System.out.println("Mathced :: "+count+" default count ::"+(Test.size()*100-count));
+		cache.print_stats();
+		System.out.println("*********************************************************");
+		try {
+			PrintWriter pw = new PrintWriter("Cache_out","UTF-8");
+			for(int i=0;i<Test.size();i++){
+				pw.println("IP :: "+Test.get(i)+" Nexthop :: "+out[i]);
+			}
+			pw.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	/*
+	 * Read the addresses of the test file into Test as dotted-quad Strings
+	 */
+	public static void read_test(String testfile, final ArrayList<String> Test) throws IOException{
+		mapped_loader.read_addresses(testfile,1<<16,new mapped_loader.address_handler(){
+			public void addresses(int addr[], int count){
+				for(int i=0;i<count;i++){
+					Test.add(get_dotted(addr[i]));
 				}
 			}
-			//System.out.println("checking ind..."+temp.ind);
-			if(temp.ind){
-				longest_match = temp.prefix;
-				next_hop=temp.next_hop;
+		});
+	}
+	
+	/*
+	 * Main function
+	 * Read Data from input file and test file
+	 * Calls lookup functions
+	 * Optional third argument selects the approach compared with the Trie:
+	 * naive(default), multibit, dir24, flat, parallel, hash, ortc, bitmap, stream(Trie only), pipeline(Trie only), live or cache, followed by strides for multibit
+	 * (default 16-8-8), offheap for flat, number of threads for parallel (default all cores) or entries for cache (default 65536)
+	 * pipeline [output file] [csv] writes to the given file (default Pipeline_out) as text or csv
+	 * naive [output file] [trie output file] writes to the given files (default Naive_out and Trie_out)
+	 * save [image] runs flat and writes its FIB snapshot (default Fib_image); load maps the snapshot given in
+	 * place of the input file and runs the Flat Trie on it without reading routes
+	 */
+	public static void main(String args[]) throws IOException{
+		final Iplookup Ip = new Iplookup();
+		ArrayList<String> all_subnet = new ArrayList<String>();
+		final ArrayList<String> Test = new ArrayList<String>();
+		all_subnet = Ip.get_all_subnet_mask();
+		//System.out.println(all_subnet);
+		final trie lp_trie =  new trie();
+		//routes are sorted and the Trie built in one pass once all are read
+		final trie_builder builder = new trie_builder();
+		final String mode = args.length>2 ? args[2] : "naive";
+		//IPv6 files cannot be read by the IPv4 approaches, so no Trie baseline
+		if(mode.equals("ipv6")){
+			Ip.ipv6_lookup(args[0],args[1],multibit_trie.parse_strides(args.length>3 ? args[3] : ipv6_trie.DEFAULT_STRIDES));
+			return;
+		}
+		//FIB snapshot is mapped instead of reading routes, so no Trie baseline either
+		if(mode.equals("load")){
+			long startTime = System.currentTimeMillis();
+			flat_trie image = fib_snapshot.map(args[0]);
+			System.out.println("Snapshot mapped :: "+image.node_count+" nodes "+(image.next_hops.size()-1)
+					+" next hops in "+(System.currentTimeMillis()-startTime)+"ms");
+			read_test(args[1],Test);
+			Ip.engine_lookup(new counting_engine(image),"Flat Trie","Flat_out",Test,null,null);
+			return;
+		}
+		final lpm_engine engine = create_engine(mode,args.length>3 ? args[3] : null);
+		final ortc_compressor ortc = mode.equals("ortc") ? new ortc_compressor() : null;
+		//routes profiled by the auto approach, which picks the engine after loading
+		final engine_selector selector = mode.equals("auto") ? new engine_selector() : null;
+		//routes kept for the live and cache approach to withdraw and add again
+		final ArrayList<int[]> live_routes = new ArrayList<int[]>();
+		final ArrayList<String> live_next_hops = new ArrayList<String>();
+		//Reading Input Data 
+		long startTime = System.currentTimeMillis();
+		int routes = mapped_loader.read_routes(args[0],new mapped_loader.route_handler(){
+			public void route(int prefix, int CIDR, String next_hop){
+				//Forwarding table is only used by the Naive approach
+				if(mode.equals("naive")){
+					String subnet_mask =Ip.get_subnet_mask(CIDR);
+					String net_prefix=Ip.getkey(next_hop,subnet_mask);
+					forwarding_table.put(net_prefix,new value(next_hops.intern(next_hop),CIDR));
+				}
+				
+				builder.add(prefix,CIDR,next_hop);
+				if(engine!=null){
+					engine.insert(prefix,CIDR,next_hops.intern(next_hop));
+				}
+				if(selector!=null){
+					selector.add(prefix,CIDR,next_hop);
+				}
+				if(ortc!=null){
+					ortc.add(prefix,CIDR,next_hops.intern(next_hop));
+				}
+				if(mode.equals("live") || mode.equals("cache")){
+					live_routes.add(new int[]{prefix,CIDR});
+					live_next_hops.add(next_hop);
+				}
 			}
+		});
+		long buildTime = System.currentTimeMillis();
+		lp_trie.root = builder.build(Runtime.getRuntime().availableProcessors());
+		buildTime = System.currentTimeMillis()-buildTime;
+		if(engine!=null){
+			engine.build();
 		}
-		long et = System.currentTimeMillis();
-		time+=(et-st);
-		if(longest_match==null){
-			//System.out.println("value:: "+input);
-			out.add("255.255.255.255");
-			//return "def";
+		if(counting_engine.unwrap(engine) instanceof flat_trie && args.length>3 && args[3].equals("offheap")){
+			((flat_trie)counting_engine.unwrap(engine)).to_off_heap();
 		}
-		else{
-			out.add(next_hop);
-			count+=1;
+		System.out.println("Routes loaded :: "+routes+" in "+(System.currentTimeMillis()-startTime)+"ms (Trie built in "+buildTime+"ms)");
+		//cheap enough to stay on, visible in jconsole as Iplookup:type=lookup_stats
+		lp_trie.enable_stats("trie");
+		if(mode.equals("save")){
+			String image = args.length>3 ? args[3] : "Fib_image";
+			startTime = System.currentTimeMillis();
+			long bytes = fib_snapshot.write((flat_trie)counting_engine.unwrap(engine),image);
+			System.out.println("Snapshot written :: "+image+" "+bytes/1024+"KB in "+(System.currentTimeMillis()-startTime)+"ms");
+		}
+		if(mode.equals("stream")){
+			Ip.stream_lookup(lp_trie,args[1]);
+			return;
+		}
+		if(mode.equals("pipeline")){
+			Ip.pipeline_lookup(lp_trie,args[1],args.length>3 ? args[3] : "Pipeline_out",args.length>4 && args[4].equals("csv"));
+			return;
+		}
+		//Reading Test data
+		read_test(args[1],Test);
+		//calling lookup function
+		//naive takes the output files as its options
+		Ip.trie_lookup(lp_trie,Test,mode.equals("naive") && args.length>4 ? args[4] : "Trie_out");
+		if(engine!=null){
+			String name = engine.name();
+			Ip.engine_lookup(engine,TITLES.get(name),Character.toUpperCase(name.charAt(0))+name.substring(1)+"_out",
+					Test,lp_trie,null);
+		}else if(selector!=null){
+			//timed on the test addresses, budget in MB
+			long budget = (args.length>3 ? Long.parseLong(args[3]) : 64)<<20;
+			int sample[] = new int[Math.min(Test.size(),engine_selector.SAMPLE)];
+			for(int i=0;i<sample.length;i++){
+				sample[i]=Ip.get_int_addr(Test.get(i));
+			}
+			lpm_engine best = new counting_engine(selector.select(sample,budget));
+			Ip.engine_lookup(best,"Auto("+TITLES.get(best.name())+")","Auto_out",Test,null,null);
+		}else if(ortc!=null){
+			Ip.ortc_lookup(ortc,lp_trie,Test);
+		}else if(mode.equals("live")){
+			Ip.live_lookup(lp_trie,live_routes,live_next_hops,Test);
+		}else if(mode.equals("cache")){
+			Ip.cache_lookup(lp_trie,live_routes,Test,args.length>3 ? Integer.parseInt(args[3]) : 1<<16);
+		}else if(mode.equals("parallel")){
+			int threads = args.length>3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+			Ip.parallel_lookup(lp_trie,Test,threads);
+		}else{
+			Ip.naive_lookup(Test,all_subnet,args.length>3 ? args[3] : "Naive_out");
 		}
-		//return next_hop;
-		//System.out.println("Longest prefix match :: "+longest_match+" Nexthop:: "+next_hop);
-		
 	}
-	
-	
-
 }
-	
-
-
-
-
@@ -12,75 +12,134 @@ import java.io.*;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 
 /*
  * Main RIP class
  * Provides routing table(Hashtable),receving_queue,sending_queue,neigbhor list to other classes 
+ * Sender, receiver and update threads block on their queue or socket while idle;
+ * periodic table updates and the neighbor monitor run on a scheduled executor
+ * Updates use the RIPv2 message format(RFC 2453): a 4 byte header and up to
+ * 25 route entries of 20 bytes per datagram, a table takes as many datagrams as needed
+ * Addresses are ints from the wire to the routing table, which is keyed by network
+ * Routes that are lost, through a failed neighbor or grown to METRIC_INFINITY,
+ * are removed and announced at METRIC_INFINITY so the neighbors drop them too
  */
 public class RIP{
 
-	public static DatagramSocket router_server;
 	public static String myipaddr;
+	public static int myaddr;
+	//RIP socket, bound to myipaddr so the source address of an update names its router
 	public static DatagramSocket client_socket;
 	public static int port =3020;
-	public static int[] subnet = {255,255,255,0}; 
-	public static ObjectInputStream in;
-	public static ObjectOutputStream out;
-	public static Hashtable<String,path> routing_table= new Hashtable<String,path>();
-	public static Queue<String> sending_queue =  new LinkedList<String>();
-	public static Queue<String> receving_queue =  new LinkedList<String>();
+	public static final int SUBNET_MASK = 0xffffff00;
+	public static Hashtable<Integer,path> routing_table= new Hashtable<Integer,path>();
+	//TABLE_UPDATE or a response with the entries to announce
+	public static BlockingQueue<routing_update> sending_queue =  new LinkedBlockingQueue<routing_update>();
+	public static BlockingQueue<routing_update> receving_queue =  new LinkedBlockingQueue<routing_update>();
 	public static ArrayList<neigbhors> direct_neigbhor = new ArrayList<neigbhors>();
+	//RIPv2 message format
+	public static final int COMMAND_REQUEST = 1;
+	public static final int COMMAND_RESPONSE = 2;
+	public static final int VERSION = 2;
+	public static final int AF_INET = 2;
+	public static final int HEADER = 4;
+	public static final int ENTRY = 20;
+	public static final int ENTRIES_PER_DATAGRAM = 25;
+	public static final int MAX_DATAGRAM = HEADER+ENTRIES_PER_DATAGRAM*ENTRY;
+	//unreachable, route costs must stay below it
+	public static final int METRIC_INFINITY = 16;
+	//placeholder in sending_queue for a full table update, built when it is sent
+	public static final routing_update TABLE_UPDATE = new routing_update(COMMAND_RESPONSE,null);
+	//a TABLE_UPDATE is waiting in sending_queue
+	public static AtomicBoolean update_pending = new AtomicBoolean(false);
+	public static final long UPDATE_INTERVAL = 3000;
+	public static final long MONITOR_INTERVAL = 20000;
+	public static ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 	
+	/*
+	 * Queue a full table update unless one is already waiting
+	 * Called every UPDATE_INTERVAL and for triggered updates, which go out as
+	 * soon as the sender takes them
+	 */
+	public static void request_update(){
+		if(update_pending.compareAndSet(false,true)){
+			sending_queue.add(TABLE_UPDATE);
+		}
+	}
 	
-	//Returns network prefix
-	public String getkey(String dest_ip){
-		String []dest = dest_ip.split(Pattern.quote("."));
-		String network_prefix="";
-		for(int index=0;index<dest.length;index++){
-			int num = Integer.parseInt(dest[index]);	
-			network_prefix +=(num & subnet[index]);
-			if(index+1!=dest.length){
-				network_prefix +=".";
+	
+	/*
+	 * Queue a response announcing the removed routes at METRIC_INFINITY, so the
+	 * neighbors drop the routes they have through this router
+	 */
+	public static void withdraw(ArrayList<path> removed){
+		if(removed.isEmpty()){
+			return;
+		}
+		routing_message entries[] = new routing_message[removed.size()];
+		for(int i=0;i<entries.length;i++){
+			entries[i] = new routing_message(removed.get(i).dest_addr,myaddr,SUBNET_MASK,0,METRIC_INFINITY);
+		}
+		sending_queue.add(new routing_update(COMMAND_RESPONSE,entries));
+	}
+	
+	//Dotted decimal address to int
+	public static int addr_to_int(String addr){
+		int value=0;
+		int octet=0;
+		for(int i=0;i<addr.length();i++){
+			char c = addr.charAt(i);
+			if(c=='.'){
+				value = value<<8 | octet;
+				octet=0;
+			}else{
+				octet = octet*10+(c-'0');
 			}
 		}
-		
-		return network_prefix; 
-		
-		
+		return value<<8 | octet;
+	}
+	
+	//int address to dotted decimal
+	public static String int_to_addr(int addr){
+		StringBuilder sb = new StringBuilder(15);
+		sb.append(addr>>>24).append('.').append(addr>>>16 & 255).append('.')
+			.append(addr>>>8 & 255).append('.').append(addr & 255);
+		return sb.toString();
+	}
+	
+	//Returns network prefix
+	public static int getkey(int dest_ip){
+		return dest_ip & SUBNET_MASK;
 	}
 	//To display Routing Table
 	public void printhashtable(){
-		Iterator iter;
-		iter = routing_table.entrySet().iterator();
-		
 		System.out.println("Dest. Ip Addr\tSubnet\t\tNexthop\t\tCost");
-		while(iter.hasNext()){
-			String send_msg="";
-			Map.Entry item = (Map.Entry) iter.next();
-			path temp_path = (path) item.getValue();
-			//send_msg+="Routing Version:: "+2+" ";
-			send_msg+=temp_path.dest_addr+"\t"+"255.255.255.0"+"\t"+
-					temp_path.Next_hop+"\t"+temp_path.cost;
-			System.out.println(send_msg);
+		synchronized(routing_table){
+			for(path temp_path: routing_table.values()){
+				System.out.println(int_to_addr(temp_path.dest_addr)+"\t"+int_to_addr(SUBNET_MASK)+"\t"+
+						int_to_addr(temp_path.Next_hop)+"\t"+temp_path.cost);
 			}
-		
+		}
 	}
 	
-	//Remove failed router from the data structures
-	public boolean remove_failed_router(String dest_ip){
-		boolean flag=false;
-		Iterator iter;
-		iter = routing_table.entrySet().iterator();
-		
-		String send_msg="";
+	//Remove failed router from the data structures, returns the routes removed
+	public ArrayList<path> remove_failed_router(int dest_ip){
+		ArrayList<path> removed = new ArrayList<path>();
 		//remove from neibhor list
 		synchronized(direct_neigbhor){
 			for(neigbhors nbr: direct_neigbhor){
-				if(nbr.dest_ip.equals(dest_ip)){
+				if(nbr.addr==dest_ip){
 					direct_neigbhor.remove(nbr);
 					break;
 				}
@@ -88,26 +147,18 @@ public class RIP{
 			}
 		}
 		
-		//removing from hash table next hop
-		while(iter.hasNext()){
-			
-			Map.Entry item = (Map.Entry) iter.next();
-			path temp_path = (path) item.getValue();
-			if (temp_path.Next_hop==dest_ip){
-				iter.remove();
-				flag=true;
+		//removing routes through the failed router and the route to it
+		synchronized(routing_table){
+			Iterator<path> iter = routing_table.values().iterator();
+			while(iter.hasNext()){
+				path temp_path = iter.next();
+				if (temp_path.Next_hop==dest_ip || getkey(temp_path.dest_addr)==getkey(dest_ip)){
+					iter.remove();
+					removed.add(temp_path);
+				}
 			}
 		}
-		// remove from key
-		String key= getkey(dest_ip);
-		if(routing_table.containsKey(key)){
-			routing_table.remove(key);
-			flag=true;
-		}
-		//
-		
-		
-		return flag;
+		return removed;
 	}
 	
 	//Main function
@@ -116,17 +167,23 @@ public class RIP{
 		
 		if(args.length>0 && args.length%2!=0){
 		myipaddr = args[0];
+		myaddr = addr_to_int(myipaddr);
 		System.out.println("My IP address....."+myipaddr);
 		//Initialize routing table
 		for(int i=1;i<args.length;i+=2){	
 			System.out.println("Adding neigbhors..."+args[i]);
-			direct_neigbhor.add(new neigbhors(args[i],Integer.parseInt(args[i+1]),true));
-			String key = rip2.getkey(args[i]);
-			path temp_path =  new path(args[i],args[i],Integer.parseInt(args[i+1]));
-			routing_table.put(key, temp_path);
+			neigbhors nbr = new neigbhors(args[i],Integer.parseInt(args[i+1]),true);
+			direct_neigbhor.add(nbr);
+			routing_table.put(getkey(nbr.addr), new path(nbr.addr,nbr.addr,nbr.cost));
 		}
 		//create threads for every other class			
 		rip2.printhashtable();	
+		try{
+			client_socket = new DatagramSocket(port,InetAddress.getByName(myipaddr));
+		}catch(IOException e){
+			e.printStackTrace();
+			return;
+		}
 		System.out.println("RIP activated");
 		System.out.println("Creating  sender thread ");
 		new Thread(new send_info(sending_queue)).start();
@@ -137,72 +194,70 @@ public class RIP{
 		System.out.println("Creating update thread ");
 		new Thread(new update_info(routing_table,receving_queue)).start();
 		System.out.println("update thread created");
-		System.out.println("Creating mointor thread ");
-		new Thread(new moniter()).start();
-		System.out.println("monitor thread created");
+		System.out.println("Scheduling periodic updates and monitor");
+		scheduler.scheduleAtFixedRate(new Runnable(){
+			public void run(){
+				request_update();
+			}
+		},0,UPDATE_INTERVAL,TimeUnit.MILLISECONDS);
+		scheduler.scheduleWithFixedDelay(new moniter(),MONITOR_INTERVAL,MONITOR_INTERVAL,TimeUnit.MILLISECONDS);
+		System.out.println("periodic updates and monitor scheduled");
 		}
 	}
 	
 }
 
  
+/*
+ * Monitor
+ * Runs every MONITOR_INTERVAL on the scheduler: a neighbor that sent nothing
+ * since the last run is removed and the routes through it are withdrawn
+ */
 class moniter extends RIP implements Runnable{
 
 	@Override
 	public void run() {
 		//Monitor if routers are active or not		
-		boolean fail_flag=false;
-		String failure_message="";
-		String dest_ip="";
-		while(true){
+		ArrayList<neigbhors> failed = new ArrayList<neigbhors>();
+		try{
 			synchronized(direct_neigbhor){
 				for(neigbhors nbr: direct_neigbhor){
 					if(nbr.active){
 						nbr.active=false;
 					}else{
 						System.out.println("Neighbor down.......... "+nbr.dest_ip);
-						dest_ip=nbr.dest_ip;
-						fail_flag=true;
+						failed.add(nbr);
 					}
 				}
 			}
-			if(fail_flag){
-				fail_flag=false;
-				failure_message="F"+";"+dest_ip;
-				remove_failed_router(dest_ip);	
-				synchronized(sending_queue){
-					sending_queue.add(failure_message);
-					try {
-						sending_queue.wait();
-					} catch (InterruptedException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-				}
-			}
-			try {
-				//sleeping for 10sec
-				Thread.sleep(20000);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			for(neigbhors nbr: failed){
+				withdraw(remove_failed_router(nbr.addr));
 			}
+		}catch(RuntimeException e){
+			//an exception would cancel the later runs
+			e.printStackTrace();
 		}
 	}
 	
-	
-	
-	
 }
 
 //Neighbor class
 class neigbhors{
 	String dest_ip;
+	int addr;
+	InetAddress inet;
 	int cost;
 	boolean active;
 	
 	neigbhors(String dest,int cost,boolean active){
 		this.dest_ip=dest;
+		this.addr=RIP.addr_to_int(dest);
+		try{
+			this.inet=InetAddress.getByAddress(new byte[]{(byte)(addr>>>24),(byte)(addr>>>16),(byte)(addr>>>8),(byte)addr});
+		}catch(UnknownHostException e){
+			//four bytes are always a valid address
+			throw new IllegalStateException(e);
+		}
 		this.cost =cost;
 		this.active=active;
 	}
@@ -210,13 +265,13 @@ class neigbhors{
 //routing message format
 class routing_message{
 
-	String dest_Ip_addr;
-	String src_Ip_addr;
-	String Subnet_mask;
-	String Next_hop;
+	int dest_Ip_addr;
+	int src_Ip_addr;
+	int Subnet_mask;
+	int Next_hop;
 	int cost;
 	
-	routing_message(String dst_Ip_addr,String src_Ip_addr,String Subnet_mask,String Nexthop, int cost){
+	routing_message(int dst_Ip_addr,int src_Ip_addr,int Subnet_mask,int Nexthop, int cost){
 		
 		this.dest_Ip_addr = dst_Ip_addr;
 		this.src_Ip_addr = src_Ip_addr;
@@ -226,12 +281,23 @@ class routing_message{
 	}
 }
 
+//Message: command and its route entries, null for entries of other address families
+class routing_update{
+	int command;
+	routing_message entries[];
+	
+	routing_update(int command,routing_message entries[]){
+		this.command=command;
+		this.entries=entries;
+	}
+}
+
 //Path to be stored in Routing table
 class path{
-	String dest_addr;
-	String Next_hop;
+	int dest_addr;
+	int Next_hop;
 	int cost;
-	path(String dest_addr,String Nexthop,int cost){
+	path(int dest_addr,int Nexthop,int cost){
 		this.dest_addr=dest_addr;
 		this.Next_hop=Nexthop;	
 		this.cost=cost;
@@ -239,97 +305,117 @@ class path{
 }
 
 //Send info
+//Sends full table updates and withdrawn routes to all neighbors, blocked on the queue while idle
 class send_info  extends RIP implements Runnable {
 
-	public Queue<String> queue;
+	public BlockingQueue<routing_update> queue;
+	//datagram being encoded, sent as is to every neighbor
+	private ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+	private DatagramPacket packet = new DatagramPacket(buffer.array(),0);
 	
 	
-	send_info(Queue<String> send_queue){
+	send_info(BlockingQueue<routing_update> send_queue){
 		this.queue = send_queue;
 	}
 	
-	public void send_message(){
-		Iterator iter;
-		iter = routing_table.entrySet().iterator();
-		
-		String send_msg="";
-		while(iter.hasNext()){
-			
-			Map.Entry item = (Map.Entry) iter.next();
-			path temp_path = (path) item.getValue();
-			send_msg+=2+";";
-			send_msg+=temp_path.dest_addr+";"+myipaddr+";"+"255.255.255.0"+";"+temp_path.Next_hop+";"+temp_path.cost+";";
+	//Start a datagram of command
+	private void begin(int command){
+		buffer.clear();
+		buffer.put((byte)command);
+		buffer.put((byte)VERSION);
+		buffer.putShort((short)0);
+	}
+	
+	//Add a route entry: address family, route tag, address, mask, next hop, metric
+	private void put_entry(int addr, int next_hop, int metric){
+		buffer.putShort((short)AF_INET);
+		buffer.putShort((short)0);
+		buffer.putInt(addr);
+		buffer.putInt(SUBNET_MASK);
+		buffer.putInt(next_hop);
+		buffer.putInt(metric);
+	}
+	
+	//Send the datagram to every neighbor
+	private void flush(){
+		packet.setLength(buffer.position());
+		packet.setPort(port);
+		synchronized(direct_neigbhor){
+			for(neigbhors nbr: direct_neigbhor){
+				try{
+					packet.setAddress(nbr.inet);
+					client_socket.send(packet);
+				}catch(IOException e){
+					e.printStackTrace();
+				}
 			}
-			//	System.out.println("message Waiting for sending queue");
+		}
+	}
 	
-			//System.out.println("message acquired for sending queue");
-			sending_queue.add(send_msg);
+	//Full table update, ENTRIES_PER_DATAGRAM routes per datagram
+	public void send_table(){
+		path paths[];
+		synchronized(routing_table){
+			paths = routing_table.values().toArray(new path[routing_table.size()]);
+		}
+		begin(COMMAND_RESPONSE);
+		int entries=0;
+		for(path temp_path: paths){
+			if(entries==ENTRIES_PER_DATAGRAM){
+				flush();
+				begin(COMMAND_RESPONSE);
+				entries=0;
+			}
+			put_entry(temp_path.dest_addr,temp_path.Next_hop,Math.min(temp_path.cost,METRIC_INFINITY));
+			entries++;
+		}
+		//an empty table still tells the neighbors this router is up
+		if(entries>0 || paths.length==0){
+			flush();
+		}
+	}
+	
+	//Response of the given entries, ENTRIES_PER_DATAGRAM per datagram
+	public void send_entries(routing_message entries[]){
+		begin(COMMAND_RESPONSE);
+		int count=0;
+		for(routing_message msg: entries){
+			if(count==ENTRIES_PER_DATAGRAM){
+				flush();
+				begin(COMMAND_RESPONSE);
+				count=0;
+			}
+			put_entry(msg.dest_Ip_addr,msg.Next_hop,msg.cost);
+			count++;
+		}
+		flush();
 	}
 	
 	
 	@Override
 	public void run() {
 		while(true){
-			send_message();
-			//System.out.println("Sending thred running");
-			//System.out.println("Sending queue:: "+sending_queue.size());
-			if(sending_queue.size()>0){
-				//System.out.println("sender Waiting for queue");
-				//System.out.println("sender acquired for queue");
-				String message = sending_queue.remove();
-				synchronized(sending_queue){	
-					/*if(message.charAt(0)=='F'){
-						try {
-							sending_queue.wait();
-						} catch (InterruptedException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-					}*/
-					//System.out.println("message"+message);
-					
-					synchronized(direct_neigbhor){
-						if(direct_neigbhor.size()==0){
-							System.out.println("No Neigbhors To Send");
-							
-						}
-						for(neigbhors nbr: direct_neigbhor){
-							try{
-							router_server = new DatagramSocket();
-					
-							InetAddress ipAddr = InetAddress.getByName(nbr.dest_ip);
-							ByteArrayOutputStream Byte_Array = new  ByteArrayOutputStream();
-							out = new ObjectOutputStream(Byte_Array);
-					        out.writeObject(message);
-							
-					        byte[] buffer = Byte_Array.toByteArray();
-							DatagramPacket packet= new DatagramPacket(buffer,buffer.length,ipAddr,port);
-							router_server.send(packet);
-							System.out.println("Sending data to "+nbr.dest_ip);
-							//System.out.println("message::"+message);
-							out.flush();
-										
-							}catch(Exception e){
-								//router_server.close();
-								e.printStackTrace();
-							}
-						}
-					}
-					printhashtable();
-					try {
-						sending_queue.wait(3000);
-					} catch (InterruptedException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-						
-					
+			routing_update message;
+			try {
+				message = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			synchronized(direct_neigbhor){
+				if(direct_neigbhor.size()==0){
+					System.out.println("No Neigbhors To Send");
 				}
-				
 			}
-			
-			
-			
+			if(message==TABLE_UPDATE){
+				//cleared first, so a change made while encoding is sent again
+				update_pending.set(false);
+				send_table();
+				System.out.println("Sent routing table");
+			}else{
+				send_entries(message.entries);
+				System.out.println("Sent "+message.entries.length+" withdrawn routes");
+			}
+			printhashtable();
 		}
 		
 	}	
@@ -339,110 +425,81 @@ class send_info  extends RIP implements Runnable {
 
 //update info
 class update_info extends RIP implements Runnable{
-	public Hashtable<String,path> routing_table;
-	public Queue<String> receving_queue;
-	update_info(Hashtable<String,path> table,Queue<String> receving_queue){
+	public Hashtable<Integer,path> routing_table;
+	public BlockingQueue<routing_update> receving_queue;
+	update_info(Hashtable<Integer,path> table,BlockingQueue<routing_update> receving_queue){
 		this.routing_table = table;
 		this.receving_queue = receving_queue;
 	}
 	
-	public void poison_river(routing_message msg){
-		
+	/*
+	 * Route through the sender of msg: follows the sender's cost up or down,
+	 * unless the destination is a neighbor whose direct link is as cheap;
+	 * at METRIC_INFINITY it is removed and added to withdrawn
+	 */
+	public boolean poison_river(routing_message msg, path curr_path, int cost, ArrayList<path> withdrawn){
+		int key = getkey(msg.dest_Ip_addr);
 		synchronized(direct_neigbhor){
 			for(neigbhors nbr: direct_neigbhor){
-				String dkey =  getkey(msg.dest_Ip_addr);
-				path curr_path= (path) routing_table.get(dkey);
-				
-				if(nbr.dest_ip==msg.dest_Ip_addr){
-					String key =  getkey(msg.src_Ip_addr);
-					path msg_router_path;
-					if(routing_table.containsKey(key)){
-						//System.out.println("Key present");
-						msg_router_path= (path) routing_table.get(key);
-					}
-					else{
-						//System.out.println("Key not present");
-						msg_router_path = new path(msg.src_Ip_addr,msg.src_Ip_addr,9999999);
-					}
-					if((msg_router_path.cost+msg.cost) < nbr.cost){
-						System.out.println("Poison River Update ...........");
-						curr_path.dest_addr= msg.dest_Ip_addr;
-						curr_path.Next_hop = msg.src_Ip_addr;
-						curr_path.cost = msg_router_path.cost+msg.cost;  
-						//System.out.println("key"+key+"cost"+curr_path.cost+" "+routing_table);
-						routing_table.put(key, curr_path);
-						System.out.println("Updated");
-						//flag= true;
-					}
-					else{
-						path temp_path= new path(nbr.dest_ip,nbr.dest_ip,nbr.cost);
-						routing_table.put(dkey, temp_path);
-					}
+				if(nbr.addr==msg.dest_Ip_addr && nbr.cost<=cost){
+					boolean changed = curr_path.Next_hop!=nbr.addr || curr_path.cost!=nbr.cost;
+					routing_table.put(key, new path(nbr.addr,nbr.addr,nbr.cost));
+					return changed;
 				}
-			}	
+			}
 		}
-		
-		
+		if(cost>=METRIC_INFINITY){
+			System.out.println("Route withdrawn ........... "+int_to_addr(msg.dest_Ip_addr));
+			routing_table.remove(key);
+			withdrawn.add(curr_path);
+			return true;
+		}
+		if(curr_path.cost!=cost){
+			System.out.println("Poison River Update ...........");
+			curr_path.dest_addr= msg.dest_Ip_addr;
+			curr_path.cost = cost;
+			return true;
+		}
+		return false;
 	}
 	
 	
 	
-	public boolean update_hashtable(routing_message rm[]){
+	/*
+	 * Apply a neighbor's response, routes it made unreachable are added to withdrawn
+	 * Returns true when the table changed
+	 */
+	public boolean update_hashtable(routing_message rm[], ArrayList<path> withdrawn){
 		boolean flag=false;
 		for (routing_message msg: rm){
-			if (msg !=null && !msg.dest_Ip_addr.equals(myipaddr) && !msg.Next_hop.equals(myipaddr)){
-				//System.out.println("Inside rm");
-				//System.out.println("msg......"+msg.dest_Ip_addr);
-				
-				String key =  getkey(msg.dest_Ip_addr);
-				String msg_key =  getkey(msg.src_Ip_addr);
-				path msg_router_path;
-				//System.out.println("key........"+key);
-				if(routing_table.containsKey(key)){
-					path curr_path = (path) routing_table.get(key);
-					if(curr_path.Next_hop == msg.src_Ip_addr){
-						poison_river(msg);
-						continue;
-					}
-					
-					
-					//System.out.println("message key::"+msg_key);
-					
-					if(routing_table.containsKey(msg_key)){
-						//System.out.println("Key present");
-						msg_router_path= (path) routing_table.get(msg_key);
-					}
-					else{
-						//System.out.println("Key not present");
-						
-						msg_router_path = new path(msg.src_Ip_addr,msg.src_Ip_addr,9999999);
-					}
-					if((msg_router_path.cost+msg.cost) < curr_path.cost){
-						System.out.println("Updating Hashtable...........");
-						curr_path.dest_addr= msg.dest_Ip_addr;
-						curr_path.Next_hop = msg.src_Ip_addr;
-						curr_path.cost = msg_router_path.cost+msg.cost;  
-						//System.out.println("key"+key+"cost"+curr_path.cost+" "+routing_table);
-						routing_table.put(key, curr_path);
-						System.out.println("Updated");
-						flag= true;
-					}
-				}
-				else{
-					System.out.println("Adding new entry to Hashtable...........");
-					if(routing_table.containsKey(msg_key)){
-						//System.out.println("Key present");
-						msg_router_path= (path) routing_table.get(msg_key);
-					}
-					else{
-						msg_router_path = new path(msg.src_Ip_addr,msg.src_Ip_addr,9999999);
-					}
-					path curr_path = new path(msg.dest_Ip_addr,msg.src_Ip_addr,msg_router_path.cost+msg.cost);
-					
-					routing_table.put(key, curr_path);
-					flag=true;
-					
+			//split horizon: routes the sender has through this router are skipped
+			if (msg ==null || msg.dest_Ip_addr==myaddr || msg.Next_hop==myaddr){
+				continue;
+			}
+			int key =  getkey(msg.dest_Ip_addr);
+			path msg_router_path = routing_table.get(getkey(msg.src_Ip_addr));
+			if(msg_router_path==null){
+				//sender not reachable(yet)
+				continue;
+			}
+			int cost = Math.min(msg_router_path.cost+msg.cost,METRIC_INFINITY);
+			path curr_path = routing_table.get(key);
+			if(curr_path==null){
+				if(cost>=METRIC_INFINITY){
+					continue;
 				}
+				System.out.println("Adding new entry to Hashtable...........");
+				routing_table.put(key, new path(msg.dest_Ip_addr,msg.src_Ip_addr,cost));
+				flag=true;
+			}else if(curr_path.Next_hop == msg.src_Ip_addr){
+				flag |= poison_river(msg,curr_path,cost,withdrawn);
+			}else if(cost < curr_path.cost){
+				System.out.println("Updating Hashtable...........");
+				curr_path.dest_addr= msg.dest_Ip_addr;
+				curr_path.Next_hop = msg.src_Ip_addr;
+				curr_path.cost = cost;
+				System.out.println("Updated");
+				flag= true;
 			}
 		}
 		
@@ -452,55 +509,26 @@ class update_info extends RIP implements Runnable{
 	
 	@Override
 	public void run() {
-		String message;
+		routing_update update;
 		while(true){
-			//System.out.println("update thread running");
-			//System.out.println("Receving queue::"+receving_queue.size());
-			synchronized(receving_queue){
-				String[]msg;
-				if(receving_queue.size()>0){
-					
-					//System.out.println("Update Waiting for receving queue");
-					
-					//System.out.println("update acquired receing queue");
-					message = receving_queue.remove();
-					if (message.charAt(0)!='F'){
-						msg = message.split(";");
-					
-						routing_message rm[] =  new routing_message[10];
-						int counter=0;
-						for(int i=0;i<msg.length;i+=6){
-						//System.out.println(msg[i+1]+msg[i+2]+msg[i+3]+msg[i+4]+msg[i+5]);
-							rm[counter] = new routing_message(msg[i+1],msg[i+2],msg[i+3],msg[i+4],Integer.parseInt(msg[i+5]));
-							counter++;
-						}
-					
-						boolean update_flag=update_hashtable(rm);
-						if (update_flag){
-							printhashtable();
-							System.out.println("Initiating Trigger update");
-							synchronized(sending_queue){
-								sending_queue.notifyAll();
-							}
-						}
-					}
-					else{
-						String failure_message[] = message.split(";");
-						boolean remove_flag=remove_failed_router(failure_message[1]);
-						if(remove_flag){
-							synchronized(sending_queue){
-								sending_queue.add(message);
-								sending_queue.notifyAll();
-							}
-						}
-					}
-				}/*else{
-						try {
-							receving_queue.wait();
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
-					}	*/
+			try {
+				//blocks while no message was received
+				update = receving_queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (update.command==COMMAND_RESPONSE){
+				boolean update_flag;
+				ArrayList<path> withdrawn = new ArrayList<path>();
+				synchronized(routing_table){
+					update_flag=update_hashtable(update.entries,withdrawn);
+				}
+				if (update_flag){
+					printhashtable();
+					System.out.println("Initiating Trigger update");
+					withdraw(withdrawn);
+					request_update();
+				}
 			}
 		}
 				
@@ -510,8 +538,8 @@ class update_info extends RIP implements Runnable{
 
 
 class recevie_info extends RIP implements Runnable{
-	public Queue<String> queue;
-	recevie_info(Queue<String> receving_queue){
+	public BlockingQueue<routing_update> queue;
+	recevie_info(BlockingQueue<routing_update> receving_queue){
 		this.queue = receving_queue;
 		
 	}
@@ -519,43 +547,54 @@ class recevie_info extends RIP implements Runnable{
 	@Override
 	public void run() {
 		try{
-			client_socket = new DatagramSocket(port);
-			byte buff[];
-			byte buffer[] = new byte[1024];
-			String message;
+			byte buffer[] = new byte[MAX_DATAGRAM];
+			ByteBuffer data = ByteBuffer.wrap(buffer);
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length );
 			
 			while(true){
-				//System.out.println("Receving thred running");
-				message=null;
-				DatagramPacket packet = new DatagramPacket(buffer, buffer.length );
+				packet.setLength(buffer.length);
 				client_socket.receive(packet);
-				//System.out.println("Getting input");
-				buff = packet.getData();
-				ByteArrayInputStream array_input_stream = new ByteArrayInputStream(buff);
-				in = new ObjectInputStream(array_input_stream);	
-				message= (String) in.readObject();
-				String[] msg = message.split(";");
-				System.out.println("recevied Input");
-				if(message!=null){
-					//System.out.println("Recevier Waiting for receving queue");
-					synchronized (receving_queue){
-						//System.out.println("Recevier acquired receving queue");
-						synchronized(direct_neigbhor){
-							for(neigbhors nbr: direct_neigbhor){
-								if(nbr.dest_ip.equals(msg[1])){
-									nbr.active=true;
-									System.out.println("neigbhors.... "+nbr.dest_ip+" is active");
-									break;
-								}
-							}
-						}
-										
-						System.out.println("Adding Input to queue");
-						queue.add(message);
-						receving_queue.notifyAll();
-						
+				int length = packet.getLength();
+				byte from[] = packet.getAddress().getAddress();
+				if(length<HEADER || (length-HEADER)%ENTRY!=0 || buffer[1]!=VERSION || from.length!=4
+						|| (buffer[0]!=COMMAND_REQUEST && buffer[0]!=COMMAND_RESPONSE)){
+					System.out.println("Dropped malformed message from "+packet.getAddress().getHostAddress());
+					continue;
+				}
+				int src = (from[0]&255)<<24 | (from[1]&255)<<16 | (from[2]&255)<<8 | (from[3]&255);
+				//only direct neighbors may change the routing table
+				boolean neighbor=false;
+				synchronized(direct_neigbhor){
+					for(neigbhors nbr: direct_neigbhor){
+						if(nbr.addr==src){
+							nbr.active=true;
+							neighbor=true;
+							System.out.println("neigbhors.... "+nbr.dest_ip+" is active");
+							break;
 						}
+					}
+				}
+				if(!neighbor){
+					System.out.println("Dropped message from non neighbor "+packet.getAddress().getHostAddress());
+					continue;
+				}
+				//the sender of the datagram is the router the routes go through
+				routing_message rm[] = new routing_message[(length-HEADER)/ENTRY];
+				int counter=0;
+				for(int at=HEADER;at<length;at+=ENTRY){
+					int metric = data.getInt(at+16);
+					//entries outside 1..METRIC_INFINITY are ignored, the rest of the message is kept
+					if(data.getShort(at)!=AF_INET || metric<1 || metric>METRIC_INFINITY){
+						continue;
+					}
+					rm[counter] = new routing_message(data.getInt(at+4),src,data.getInt(at+8),data.getInt(at+12),metric);
+					counter++;
 				}
+				System.out.println("recevied Input");
+				
+				System.out.println("Adding Input to queue");
+				//wakes the update thread
+				queue.add(new routing_update(buffer[0],rm));
 			}
 		}catch(Exception e){
 				//client_socket.close();
@@ -0,0 +1,134 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Per worker thread statistics
+ * Only written by its own thread, read after the batch completes
+ */
+class worker_stats{
+	String name;
+	long lookups=0;
+	long matched=0;
+	long nanos=0;
+
+	worker_stats(String name){
+		this.name=name;
+	}
+}
+
+/*
+ * Batch lookup
+ * Splits an array of addresses across a fork-join pool. All workers share one
+ * engine and only call lookup(int), which never changes it, so no locking
+ * is needed. Every worker keeps its own counters instead of sharing the trie's
+ * out/time/count fields.
+ */
+class batch_lookup{
+	//addresses looked up by one task without splitting further
+	static final int THRESHOLD = 4096;
+
+	public lpm_engine engine;
+	private ForkJoinPool pool;
+	private ArrayList<worker_stats> stats = new ArrayList<worker_stats>();
+	private ThreadLocal<worker_stats> local = new ThreadLocal<worker_stats>(){
+		@Override
+		protected worker_stats initialValue(){
+			worker_stats ws = new worker_stats(Thread.currentThread().getName());
+			synchronized(stats){
+				stats.add(ws);
+			}
+			return ws;
+		}
+	};
+
+	batch_lookup(lpm_engine engine, int threads){
+		this.engine=engine;
+		this.pool=new ForkJoinPool(threads);
+	}
+
+	/*
+	 * Look up every address and store next hop id (NO_ROUTE when no prefix
+	 * matched) in result at the same index
+	 */
+	public void lookup(int addr[], int result[]){
+		if(result.length<addr.length){
+			throw new IllegalArgumentException("Result array shorter than address array");
+		}
+		pool.invoke(new task(addr,result,0,addr.length));
+	}
+
+	class task extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		int addr[];
+		int result[];
+		int from;
+		int to;
+
+		task(int addr[], int result[], int from, int to){
+			this.addr=addr;
+			this.result=result;
+			this.from=from;
+			this.to=to;
+		}
+
+		@Override
+		protected void compute(){
+			if(to-from<=THRESHOLD){
+				worker_stats ws = local.get();
+				long st = System.nanoTime();
+				int matched=0;
+				for(int i=from;i<to;i++){
+					int next_hop = engine.lookup(addr[i]);
+					result[i]=next_hop;
+					if(next_hop!=next_hop_table.NO_ROUTE){
+						matched++;
+					}
+				}
+				ws.nanos+=System.nanoTime()-st;
+				ws.lookups+=to-from;
+				ws.matched+=matched;
+			}else{
+				int mid=(from+to)>>>1;
+				invokeAll(new task(addr,result,from,mid),new task(addr,result,mid,to));
+			}
+		}
+	}
+
+	//Lookups done by all workers
+	public long lookups(){
+		long sum=0;
+		synchronized(stats){
+			for(worker_stats ws: stats){
+				sum+=ws.lookups;
+			}
+		}
+		return sum;
+	}
+
+	//Lookups that matched a prefix, across all workers
+	public long matched(){
+		long sum=0;
+		synchronized(stats){
+			for(worker_stats ws: stats){
+				sum+=ws.matched;
+			}
+		}
+		return sum;
+	}
+
+	/*
+	 * Display statistics of every worker thread
+	 */
+	public void print_stats(){
+		synchronized(stats){
+			for(worker_stats ws: stats){
+				System.out.println(ws.name+" :: lookups "+ws.lookups+" matched "+ws.matched
+						+" time "+ws.nanos/1000000+"ms");
+			}
+		}
+	}
+
+	public void shutdown(){
+		pool.shutdown();
+	}
+}
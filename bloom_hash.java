@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Bloom Hash
+ * Longest prefix match with one Bloom filter per prefix length in front of
+ * one int_hash per length (Dharmapurikar et al.). A lookup first asks every
+ * length's filter whether the masked address may be a prefix, then probes
+ * only the lengths that answered yes, longest first, until a table hits.
+ * A filter never misses a real prefix, so a false positive costs one wasted
+ * probe and the lookup still finds the right prefix.
+ * The filters are blocked: the K bits of a key lie in one long, so a filter
+ * test is one array read. 16 bits per prefix and K=4 give a few tenths of a
+ * percent false positives per filter, so about one probe per lookup.
+ * Counters of filter answers and probes are kept only when count_stats is
+ * set, in LongAdders like lookup_stats, so any number of threads can share
+ * the engine; lookups without counters touch no shared state.
+ */
+class bloom_hash implements lpm_engine{
+	static final int BITS_PER_PREFIX = 16;
+	//bits set per key, 6 hash bits each
+	static final int K = 4;
+
+	//distinct prefix lengths, sorted, and their masks, filters and tables
+	public int length[];
+	private int mask[];
+	private long filter[][];
+	private int filter_shift[];
+	public int_hash table[];
+	public int prefix_count=0;
+	//next hop id of a /0 route
+	private int default_hop=next_hop_table.NO_ROUTE;
+	public next_hop_table next_hops;
+	//routes waiting for build()
+	private ArrayList<int[]> routes = new ArrayList<int[]>();
+
+	//counters fed by every lookup when set, set before lookups start
+	public boolean count_stats=false;
+	public LongAdder lookups = new LongAdder();
+	//filter tests, tests answered yes, table probes and probes that missed
+	public LongAdder filter_tests = new LongAdder();
+	public LongAdder filter_hits = new LongAdder();
+	public LongAdder probes = new LongAdder();
+	public LongAdder false_positives = new LongAdder();
+
+	bloom_hash(){
+		this(Iplookup.next_hops);
+	}
+
+	bloom_hash(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Add network prefix of CIDR length
+	 * Filters and tables are filled by build()
+	 */
+	public void insert(int prefix, int CIDR, String next_hop){
+		insert(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		routes.add(new int[]{prefix, CIDR, next_hop});
+	}
+
+	private static int get_mask(int CIDR){
+		return CIDR==0 ? 0 : -1<<(32-CIDR);
+	}
+
+	/*
+	 * Build a table and a filter for every prefix length in use
+	 */
+	public void build(){
+		int_hash real[] = new int_hash[33];
+		for(int route[]: routes){
+			int CIDR=route[1];
+			if(CIDR==0){
+				default_hop=route[2];
+				continue;
+			}
+			if(real[CIDR]==null){
+				real[CIDR]=new int_hash();
+			}
+			real[CIDR].put(route[0] & get_mask(CIDR),route[2]);
+		}
+		int m=0;
+		for(int len=1;len<=32;len++){
+			if(real[len]!=null){
+				m++;
+			}
+		}
+		length = new int[m];
+		mask = new int[m];
+		table = new int_hash[m];
+		filter = new long[m][];
+		filter_shift = new int[m];
+		m=0;
+		for(int len=1;len<=32;len++){
+			if(real[len]==null){
+				continue;
+			}
+			length[m]=len;
+			mask[m]=get_mask(len);
+			table[m]=new int_hash(real[len].size);
+			int words=1;
+			while(words*64L<(long)real[len].size*BITS_PER_PREFIX){
+				words<<=1;
+			}
+			filter[m]=new long[words];
+			filter_shift[m]=40-Integer.numberOfTrailingZeros(words);
+			for(int i=0;i<real[len].keys.length;i++){
+				if(real[len].values[i]>=0){
+					table[m].put(real[len].keys[i],real[len].values[i]);
+					add(m,real[len].keys[i]);
+				}
+			}
+			prefix_count+=real[len].size;
+			m++;
+		}
+		routes = null;
+	}
+
+	//64 bit hash of the key, different for every length, the top bits are the best mixed
+	private static long hash(int key, int len){
+		return ((key & 0xffffffffL) | (long)len<<32)*0x9E3779B97F4A7C15L;
+	}
+
+	//K bits of the word from the top 24 bits of the hash
+	private static long bits(long h){
+		long bits=0;
+		for(int k=0;k<K;k++){
+			bits |= 1L<<(h>>>(40+6*k));
+		}
+		return bits;
+	}
+
+	//Word of the filter from the hash bits below those
+	private int word(int i, long h){
+		return (int)(h>>>filter_shift[i]) & (filter[i].length-1);
+	}
+
+	private void add(int i, int key){
+		long h = hash(key,length[i]);
+		filter[i][word(i,h)] |= bits(h);
+	}
+
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(int addr){
+		//bit i set when the filter of length[i] may hold the masked address
+		int candidates=0;
+		for(int i=0;i<length.length;i++){
+			long h = hash(addr & mask[i],length[i]);
+			long b = bits(h);
+			if((filter[i][word(i,h)] & b)==b){
+				candidates |= 1<<i;
+			}
+		}
+		int hits = Integer.bitCount(candidates);
+		int id = default_hop;
+		int probed=0;
+		while(candidates!=0){
+			int i = 31-Integer.numberOfLeadingZeros(candidates);
+			probed++;
+			int found = table[i].get(addr & mask[i]);
+			if(found>=0){
+				id=found;
+				break;
+			}
+			candidates &= ~(1<<i);
+		}
+		if(count_stats){
+			lookups.increment();
+			filter_tests.add(length.length);
+			filter_hits.add(hits);
+			probes.add(probed);
+			//every probe but a final hit missed
+			false_positives.add(candidates!=0 ? probed-1 : probed);
+		}
+		return id;
+	}
+
+	/*
+	 * False positives over the filter answers whose truth is known: every
+	 * filter no is a true negative, a probe that missed is a false positive
+	 * (yes answers shorter than the match are never probed and not counted)
+	 */
+	public double false_positive_rate(){
+		long fp = false_positives.sum();
+		long known = filter_tests.sum()-filter_hits.sum()+fp;
+		return known==0 ? 0 : (double)fp/known;
+	}
+
+	//Expected false positive rate of a filter, (1-e^(-K/BITS_PER_PREFIX))^K for standard filters
+	public static double expected_false_positive_rate(){
+		return Math.pow(1-Math.exp(-(double)K/BITS_PER_PREFIX),K);
+	}
+
+	public void reset_stats(){
+		lookups.reset();
+		filter_tests.reset();
+		filter_hits.reset();
+		probes.reset();
+		false_positives.reset();
+	}
+
+	//Memory used by the filters and hash tables in bytes
+	public long footprint(){
+		long bytes=0;
+		for(int i=0;i<length.length;i++){
+			bytes+=8L*filter[i].length+table[i].footprint();
+		}
+		return bytes;
+	}
+
+	public String describe(){
+		String text = "Prefix lengths :: "+length.length+" prefixes :: "+prefix_count+" memory :: "+footprint()/1024+"KB";
+		long n = lookups.sum();
+		if(n==0){
+			return text;
+		}
+		return text+String.format("\nFilter hits/lookup :: %.2f probes/lookup :: %.3f false positives :: %.3f%% (expected %.3f%%)",
+				(double)filter_hits.sum()/n,(double)probes.sum()/n,
+				100*false_positive_rate(),100*expected_false_positive_rate());
+	}
+
+	public String name(){
+		return "bloom";
+	}
+
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+}
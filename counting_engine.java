@@ -0,0 +1,67 @@
+import java.util.function.LongSupplier;
+
+/*
+ * Counting Engine
+ * lpm_engine that counts the lookups and default route misses of the engine
+ * it wraps in a lookup_stats registered under the engine's name, so every
+ * engine run by Iplookup shows up next to the Trie in jconsole.
+ * Batches are passed on whole and counted with one add, single lookups with one
+ * or two. Depths are only known inside the Trie, which keeps its own stats.
+ */
+class counting_engine implements lpm_engine{
+	final lpm_engine engine;
+	final lookup_stats stats;
+
+	counting_engine(final lpm_engine engine){
+		this.engine=engine;
+		stats = new lookup_stats(engine.name(),null,new LongSupplier(){
+			public long getAsLong(){
+				return engine.footprint();
+			}
+		});
+		stats.register();
+	}
+
+	/*
+	 * The engine inside, for the approaches that need its own type
+	 */
+	static lpm_engine unwrap(lpm_engine engine){
+		return engine instanceof counting_engine ? ((counting_engine)engine).engine : engine;
+	}
+
+	public String name(){
+		return engine.name();
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		engine.insert(prefix,CIDR,next_hop);
+	}
+
+	public void build(){
+		engine.build();
+	}
+
+	public int lookup(int addr){
+		int next_hop = engine.lookup(addr);
+		stats.record(next_hop==next_hop_table.NO_ROUTE);
+		return next_hop;
+	}
+
+	public int lookup(int addr[], int result[], int count){
+		int matched = engine.lookup(addr,result,count);
+		stats.record(count,count-matched);
+		return matched;
+	}
+
+	public long footprint(){
+		return engine.footprint();
+	}
+
+	public String describe(){
+		return engine.describe();
+	}
+
+	public next_hop_table next_hops(){
+		return engine.next_hops();
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.*;
+
+/*
+ * DIR-24-8 lookup table
+ * tbl24 has one entry for every value of the top 24 bits of the address.
+ * An entry holds a next hop id, or (high bit set) the index of a 256 entry
+ * block in tbl_long that resolves prefixes longer than 24 bits.
+ * Most lookups finish with a single array read.
+ */
+class dir_24_8 implements lpm_engine{
+	//high bit of a tbl24 entry marks a pointer to a tbl_long block
+	static final int LONG_FLAG = 0x80000000;
+
+	public int tbl24[];
+	public int tbl_long[] = new int[256*16];
+	public int block_count=0;
+	//entries hold ids of this table, NO_ROUTE(0) is what an empty table holds
+	public next_hop_table next_hops;
+	//routes waiting for build()
+	private ArrayList<int[]> routes = new ArrayList<int[]>();
+
+	dir_24_8(){
+		this(Iplookup.next_hops);
+	}
+
+	dir_24_8(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Add network prefix of CIDR length
+	 * Table is filled by build()
+	 */
+	public void insert(int prefix, int CIDR, String next_hop){
+		insert(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		routes.add(new int[]{prefix, CIDR, next_hop});
+	}
+
+	/*
+	 * Fill the tables, shorter prefixes first so longer prefixes overwrite them
+	 */
+	public void build(){
+		tbl24 = new int[1<<24];
+		Collections.sort(routes, new Comparator<int[]>(){
+			public int compare(int a[], int b[]){
+				return Integer.compare(a[1],b[1]);
+			}
+		});
+		for(int route[]: routes){
+			int prefix=route[0], CIDR=route[1], id=route[2];
+			if(CIDR<=24){
+				int mask = CIDR==0 ? 0 : -1<<(32-CIDR);
+				int first = (prefix & mask)>>>8;
+				int last = first+(1<<(24-CIDR));
+				//no blocks exist yet, routes longer than 24 bits come last
+				Arrays.fill(tbl24,first,last,id);
+			}else{
+				int index = prefix>>>8;
+				if(tbl24[index]>=0){
+					//new block inherits the current /24 value
+					if((block_count+1)*256>tbl_long.length){
+						tbl_long = Arrays.copyOf(tbl_long,tbl_long.length*2);
+					}
+					Arrays.fill(tbl_long,block_count*256,(block_count+1)*256,tbl24[index]);
+					tbl24[index] = LONG_FLAG | block_count;
+					block_count++;
+				}
+				int block = (tbl24[index] & ~LONG_FLAG)<<8;
+				int first = prefix & 0xff & (-1<<(32-CIDR));
+				int last = first+(1<<(32-CIDR));
+				for(int j=first;j<last;j++){
+					tbl_long[block+j]=id;
+				}
+			}
+		}
+		tbl_long = Arrays.copyOf(tbl_long,Math.max(block_count,1)*256);
+		routes = null;
+	}
+
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(int addr){
+		int entry = tbl24[addr>>>8];
+		if(entry<0){
+			entry = tbl_long[((entry & ~LONG_FLAG)<<8) | (addr & 0xff)];
+		}
+		return entry;
+	}
+
+	//Memory used by the lookup tables in bytes
+	public long footprint(){
+		return 4L*tbl24.length + 4L*tbl_long.length;
+	}
+
+	public String describe(){
+		return "DIR-24-8 memory :: "+footprint()/1024+"KB ("+block_count+" tbl_long blocks)";
+	}
+
+	public String name(){
+		return "dir24";
+	}
+
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+}
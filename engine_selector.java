@@ -0,0 +1,304 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Engine Selector
+ * Picks the fastest lpm_engine for a routing table within a memory budget.
+ * The table is profiled first: route count, prefix length spread and the
+ * distinct prefixes each engine creates nodes or blocks for, from which the
+ * memory of every engine is estimated without building it. Engines whose
+ * estimate fits the budget are built and timed on a sample of addresses, and
+ * the fastest one whose real footprint fits is returned.
+ */
+class engine_selector{
+	static final String ENGINES[] = {"dir24","multibit","bitmap","interval","hash","bloom","flat","trie"};
+	//addresses timed per engine when no sample is given
+	static final int SAMPLE = 1<<16;
+	//warmup rounds over the sample so the JIT has compiled the lookup, then
+	//as many timed rounds, the fastest round counts
+	static final int ROUNDS = 10;
+
+	//consumes results so the JIT cannot drop the lookups
+	static volatile long sink;
+
+	public next_hop_table next_hops;
+	private int prefix[] = new int[1024];
+	private int length[] = new int[1024];
+	private int hop[] = new int[1024];
+	private int count=0;
+
+	//profile of the routes, filled by profile()
+	public int length_count[] = new int[33];
+	public int distinct_prefixes=0;
+	public int distinct_lengths=0;
+	public int trie_nodes=0;
+	//masked prefixes sorted unsigned, then by CIDR, without duplicates
+	private long sorted[];
+
+	engine_selector(){
+		this(Iplookup.next_hops);
+	}
+
+	engine_selector(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Engine by name, next hop ids of next_hops
+	 */
+	public static lpm_engine create(String name, next_hop_table next_hops){
+		if(name.equals("trie")){
+			return new trie(next_hops);
+		}else if(name.equals("multibit")){
+			return new multibit_trie(multibit_trie.parse_strides("16-8-8"),next_hops);
+		}else if(name.equals("dir24")){
+			return new dir_24_8(next_hops);
+		}else if(name.equals("flat")){
+			return new flat_trie(1024,next_hops);
+		}else if(name.equals("hash")){
+			return new length_hash(next_hops);
+		}else if(name.equals("bitmap")){
+			return new tree_bitmap(next_hops);
+		}else if(name.equals("bloom")){
+			return new bloom_hash(next_hops);
+		}else if(name.equals("interval")){
+			return new interval_table(next_hops);
+		}
+		throw new IllegalArgumentException("Unknown engine :: "+name);
+	}
+
+	public static lpm_engine create(String name){
+		return create(name,Iplookup.next_hops);
+	}
+
+	/*
+	 * Add network prefix of CIDR length
+	 * Engines are built by select()
+	 */
+	public void add(int prefix, int CIDR, String next_hop){
+		add(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void add(int prefix, int CIDR, int next_hop){
+		if(count==this.prefix.length){
+			this.prefix = Arrays.copyOf(this.prefix,count*2);
+			length = Arrays.copyOf(length,count*2);
+			hop = Arrays.copyOf(hop,count*2);
+		}
+		this.prefix[count]=prefix;
+		length[count]=CIDR;
+		hop[count]=next_hop;
+		count++;
+		sorted=null;
+	}
+
+	public int size(){
+		return count;
+	}
+
+	/*
+	 * Length histogram, distinct prefixes and binary trie nodes of the routes
+	 * Consecutive sorted prefixes share their common leading bits in a trie, so
+	 * nodes = 1 + sum of lengths - sum of common prefix lengths of neighbours
+	 */
+	public void profile(){
+		long keys[] = new long[count];
+		for(int i=0;i<count;i++){
+			long masked = prefix[i] & mask(length[i]) & 0xffffffffL;
+			//38 bits, so the signed sort orders prefixes unsigned
+			keys[i] = masked<<6 | length[i];
+		}
+		Arrays.sort(keys);
+		Arrays.fill(length_count,0);
+		int n=0;
+		long nodes=1;
+		for(int i=0;i<count;i++){
+			if(n>0 && keys[i]==keys[n-1]){
+				continue;
+			}
+			int CIDR = cidr(keys[i]);
+			length_count[CIDR]++;
+			nodes+=CIDR;
+			if(n>0){
+				int common = Integer.numberOfLeadingZeros(prefix(keys[n-1])^prefix(keys[i]));
+				nodes-=Math.min(common,Math.min(CIDR,cidr(keys[n-1])));
+			}
+			keys[n++]=keys[i];
+		}
+		sorted = Arrays.copyOf(keys,n);
+		distinct_prefixes=n;
+		trie_nodes=(int)nodes;
+		distinct_lengths=0;
+		for(int len=0;len<=32;len++){
+			if(length_count[len]>0){
+				distinct_lengths++;
+			}
+		}
+	}
+
+	private static int mask(int CIDR){
+		return CIDR==0 ? 0 : -1<<(32-CIDR);
+	}
+
+	private static int prefix(long key){
+		return (int)(key>>>6);
+	}
+
+	private static int cidr(long key){
+		return (int)key & 63;
+	}
+
+	//Distinct values of the first bits among prefixes of min_CIDR or longer
+	private int distinct(int bits, int min_CIDR){
+		int n=0;
+		int last=0;
+		for(long key: sorted){
+			if(cidr(key)<min_CIDR){
+				continue;
+			}
+			int top = prefix(key)>>>(32-bits);
+			if(n==0 || top!=last){
+				n++;
+				last=top;
+			}
+		}
+		return n;
+	}
+
+	/*
+	 * Memory the engine would use for the profiled routes, in bytes
+	 * Follows each engine's footprint(); the hash estimate assumes one marker per prefix
+	 */
+	public long estimate(String name){
+		if(sorted==null){
+			profile();
+		}
+		if(name.equals("trie")){
+			return 32L*trie_nodes;
+		}else if(name.equals("flat")){
+			return (long)flat_trie.NODE_BYTES*trie_nodes;
+		}else if(name.equals("dir24")){
+			return 4L*(1<<24)+4L*256*Math.max(16,distinct(24,25));
+		}else if(name.equals("multibit")){
+			return 9L*(1<<16)+9L*256*distinct(16,17)+5L*256*distinct(24,25);
+		}else if(name.equals("bitmap")){
+			long nodes=1;
+			for(int level=1;level<tree_bitmap.LEVELS;level++){
+				nodes+=distinct(tree_bitmap.STRIDE*level,tree_bitmap.STRIDE*level);
+			}
+			return 24L*nodes+4L*distinct_prefixes;
+		}else if(name.equals("hash")){
+			//int_hash keeps at least two slots of 8 bytes per entry, rounded up to a power of 2
+			return 8L*3*2*distinct_prefixes;
+		}else if(name.equals("bloom")){
+			//no markers, 2 to 4 filter bytes per prefix
+			return (8L*3+3)*distinct_prefixes;
+		}else if(name.equals("interval")){
+			//at most two ranges per prefix, fewer after merging equal neighbours
+			return 8L*(2L*distinct_prefixes+2);
+		}
+		throw new IllegalArgumentException("Unknown engine :: "+name);
+	}
+
+	/*
+	 * Build the named engine from the routes added so far
+	 */
+	public lpm_engine build(String name){
+		if(name.equals("trie")){
+			trie_builder builder = new trie_builder(next_hops);
+			for(int i=0;i<count;i++){
+				builder.add(prefix[i],length[i],hop[i]);
+			}
+			return builder.build_trie(Runtime.getRuntime().availableProcessors());
+		}
+		lpm_engine engine = create(name,next_hops);
+		for(int i=0;i<count;i++){
+			engine.insert(prefix[i],length[i],hop[i]);
+		}
+		engine.build();
+		return engine;
+	}
+
+	/*
+	 * Addresses inside random routes, and one in five anywhere, to time the engines on
+	 */
+	public int[] sample_addresses(int n){
+		Random random = new Random(1);
+		int addr[] = new int[n];
+		for(int i=0;i<n;i++){
+			addr[i]=random.nextInt();
+			if(count>0 && random.nextInt(5)>0){
+				int r = random.nextInt(count);
+				int m = mask(length[r]);
+				addr[i] = (prefix[r] & m) | (addr[i] & ~m);
+			}
+		}
+		return addr;
+	}
+
+	//Best ns per lookup over ROUNDS rounds of the sample, after ROUNDS warmup rounds
+	private static double time(lpm_engine engine, int sample[]){
+		int result[] = new int[sample.length];
+		long matched=0;
+		for(int r=0;r<ROUNDS;r++){
+			matched+=engine.lookup(sample,result,sample.length);
+		}
+		double best = Double.MAX_VALUE;
+		for(int r=0;r<ROUNDS;r++){
+			long st = System.nanoTime();
+			matched+=engine.lookup(sample,result,sample.length);
+			best = Math.min(best,(double)(System.nanoTime()-st)/sample.length);
+		}
+		sink+=matched;
+		return best;
+	}
+
+	/*
+	 * Build and time every engine that fits in budget bytes and return the fastest
+	 * sample holds the addresses to time, null for sample_addresses(SAMPLE)
+	 */
+	public lpm_engine select(int sample[], long budget){
+		if(sorted==null){
+			profile();
+		}
+		if(sample==null){
+			sample = sample_addresses(SAMPLE);
+		}
+		int longer=0;
+		for(int len=25;len<=32;len++){
+			longer+=length_count[len];
+		}
+		System.out.println("Engine selector :: routes "+count+" distinct prefixes "+distinct_prefixes
+				+" prefix lengths "+distinct_lengths+" longer than /24 "+longer
+				+" budget "+budget/1024+"KB sample "+sample.length);
+		lpm_engine best=null;
+		double best_ns=0;
+		for(String name: ENGINES){
+			long estimate = estimate(name);
+			if(estimate>budget){
+				System.out.println(String.format("%-9s skipped, estimated %dKB",name,estimate/1024));
+				continue;
+			}
+			long st = System.currentTimeMillis();
+			lpm_engine engine = build(name);
+			long build = System.currentTimeMillis()-st;
+			long bytes = engine.footprint();
+			if(bytes>budget){
+				System.out.println(String.format("%-9s skipped, estimated %dKB memory %dKB",name,estimate/1024,bytes/1024));
+				continue;
+			}
+			double ns = time(engine,sample);
+			System.out.println(String.format("%-9s estimated %dKB memory %dKB build %dms %.2f ns/lookup",
+					name,estimate/1024,bytes/1024,build,ns));
+			if(best==null || ns<best_ns){
+				best=engine;
+				best_ns=ns;
+			}
+		}
+		if(best==null){
+			throw new IllegalStateException("No engine fits in "+budget/1024+"KB");
+		}
+		System.out.println("Selected engine :: "+best.name());
+		return best;
+	}
+}
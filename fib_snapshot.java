@@ -0,0 +1,138 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/*
+ * FIB Snapshot
+ * Versioned binary image of a built flat_trie, written once and memory mapped
+ * at startup, so lookups start without parsing the route file or inserting a
+ * single prefix. The node section is used in place by the flat trie's off-heap
+ * lookup, and every process mapping the same file shares one page cache copy.
+ *
+ * Layout (little endian):
+ *  0  int  MAGIC "FIB1"
+ *  4  int  VERSION
+ *  8  int  node count
+ * 12  int  next hop count, including NO_ROUTE
+ * 16  int  offset of the node section
+ * 20  int  reserved
+ * 24  next hops in id order: unsigned short length + UTF-8 bytes
+ *     node section, 4096 aligned: left, right, hop(next hop id+1) per node
+ */
+class fib_snapshot{
+	static final int MAGIC = 0x31424946;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 24;
+	static final int ALIGN = 4096;
+
+	/*
+	 * Write the flat trie (heap or off-heap) as an image at path
+	 * The image is written next to path and moved over it when complete, so a
+	 * process that has the old image mapped keeps a valid file
+	 * Returns bytes written
+	 */
+	public static long write(flat_trie flat, String path) throws IOException{
+		next_hop_table hops = flat.next_hops;
+		int hop_count = hops.size();
+		ByteArrayOutputStream hop_bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(hop_bytes);
+		for(int id=0;id<hop_count;id++){
+			dos.writeUTF(hops.get(id));
+		}
+		dos.close();
+		int node_offset = (HEADER_BYTES+hop_bytes.size()+ALIGN-1)/ALIGN*ALIGN;
+		Path target = Paths.get(path);
+		Path temp = Paths.get(path+".tmp");
+		FileChannel channel = FileChannel.open(temp,StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE);
+		try{
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(1<<20,node_offset)).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(flat.node_count);
+			buffer.putInt(hop_count);
+			buffer.putInt(node_offset);
+			buffer.putInt(0);
+			buffer.put(hop_bytes.toByteArray());
+			buffer.position(node_offset);
+			for(int i=0;i<flat.node_count;i++){
+				if(buffer.remaining()<flat_trie.NODE_BYTES){
+					flush(channel,buffer);
+				}
+				if(flat.nodes!=null){
+					int at = i*flat_trie.NODE_BYTES;
+					buffer.putInt(flat.nodes.getInt(at));
+					buffer.putInt(flat.nodes.getInt(at+4));
+					buffer.putInt(flat.nodes.getInt(at+8));
+				}else{
+					buffer.putInt(flat.left[i]);
+					buffer.putInt(flat.right[i]);
+					buffer.putInt(flat.hop[i]);
+				}
+			}
+			flush(channel,buffer);
+			channel.force(true);
+		}finally{
+			channel.close();
+		}
+		Files.move(temp,target,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		return node_offset+(long)flat.node_count*flat_trie.NODE_BYTES;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/*
+	 * Map the image at path into a read-only flat trie with its own next_hop_table
+	 * Only the header and next hops are read, nodes are paged in by lookups
+	 */
+	public static flat_trie map(String path) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(path),StandardOpenOption.READ);
+		try{
+			long size = channel.size();
+			if(size<HEADER_BYTES){
+				throw new IOException("Not a FIB snapshot :: "+path);
+			}
+			ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY,0,Math.min(size,ALIGN))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if(head.getInt(0)!=MAGIC){
+				throw new IOException("Not a FIB snapshot :: "+path);
+			}
+			if(head.getInt(4)!=VERSION){
+				throw new IOException("Unsupported FIB snapshot version "+head.getInt(4)+" :: "+path);
+			}
+			int node_count = head.getInt(8);
+			int hop_count = head.getInt(12);
+			int node_offset = head.getInt(16);
+			if(node_count<1 || hop_count<1 || node_offset<HEADER_BYTES
+					|| size<node_offset+(long)node_count*flat_trie.NODE_BYTES){
+				throw new IOException("Truncated FIB snapshot :: "+path);
+			}
+			ByteBuffer hop_section = channel.map(FileChannel.MapMode.READ_ONLY,HEADER_BYTES,node_offset-HEADER_BYTES);
+			byte text[] = new byte[hop_section.capacity()];
+			hop_section.get(text);
+			DataInputStream dis = new DataInputStream(new ByteArrayInputStream(text));
+			next_hop_table hops = new next_hop_table();
+			dis.readUTF();
+			for(int id=1;id<hop_count;id++){
+				//a fresh table hands out ids in order, so stored node ids stay valid
+				if(hops.intern(dis.readUTF())!=id){
+					throw new IOException("Duplicate next hop in FIB snapshot :: "+path);
+				}
+			}
+			ByteBuffer nodes = channel.map(FileChannel.MapMode.READ_ONLY,node_offset,
+					(long)node_count*flat_trie.NODE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			return new flat_trie(nodes,node_count,hops);
+		}finally{
+			//the mappings stay valid after the channel is closed
+			channel.close();
+		}
+	}
+}
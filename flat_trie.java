@@ -0,0 +1,174 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * Flat Trie
+ * Same binary tree as the trie class, stored in parallel int arrays instead of
+ * node objects: node i has children left[i], right[i] and hop[i] = next hop id+1.
+ * Node 0 is the root, so child index 0 means no child; hop 0 means no prefix ends here.
+ * to_off_heap() moves the nodes into a direct ByteBuffer (12 bytes per node)
+ * outside the Java heap; a fib_snapshot image maps the same layout from a file.
+ */
+class flat_trie implements lpm_engine{
+	static final int NODE_BYTES = 12;
+
+	public int left[];
+	public int right[];
+	public int hop[];
+	public int node_count=1;
+	//off-heap copy of the nodes, used by lookup once set
+	public ByteBuffer nodes;
+	public next_hop_table next_hops;
+
+	flat_trie(){
+		this(1024,Iplookup.next_hops);
+	}
+
+	flat_trie(int capacity, next_hop_table next_hops){
+		this.next_hops=next_hops;
+		left = new int[capacity];
+		right = new int[capacity];
+		hop = new int[capacity];
+	}
+
+	/*
+	 * Read-only flat trie over nodes already laid out off heap, e.g. a mapped fib_snapshot
+	 */
+	flat_trie(ByteBuffer nodes, int node_count, next_hop_table next_hops){
+		this.nodes=nodes;
+		this.node_count=node_count;
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Insert binary network prefix, same input as trie.insert
+	 */
+	public void insert(String value, String next_hop){
+		int prefix=0;
+		for(int i=0;i<value.length();i++){
+			if(value.charAt(i)=='1'){
+				prefix |= 1<<(31-i);
+			}
+		}
+		insert(prefix,value.length(),next_hop);
+	}
+
+	/*
+	 * Insert network prefix of CIDR length
+	 */
+	public void insert(int prefix, int CIDR, String next_hop){
+		insert(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		if(nodes!=null){
+			throw new IllegalStateException("Flat trie already moved off heap");
+		}
+		int temp=0;
+		for(int i=0;i<CIDR;i++){
+			//new_node() may replace the arrays, so call it before indexing them
+			if(((prefix>>>(31-i)) & 1)==1){
+				if(right[temp]==0){
+					int child=new_node();
+					right[temp]=child;
+				}
+				temp=right[temp];
+			}else{
+				if(left[temp]==0){
+					int child=new_node();
+					left[temp]=child;
+				}
+				temp=left[temp];
+			}
+		}
+		hop[temp]=next_hop+1;
+	}
+
+	private int new_node(){
+		if(node_count==left.length){
+			int capacity = left.length*2;
+			left = Arrays.copyOf(left,capacity);
+			right = Arrays.copyOf(right,capacity);
+			hop = Arrays.copyOf(hop,capacity);
+		}
+		return node_count++;
+	}
+
+	/*
+	 * Copy nodes into a direct ByteBuffer and release the heap arrays
+	 */
+	public void to_off_heap(){
+		ByteBuffer buffer = ByteBuffer.allocateDirect(node_count*NODE_BYTES).order(ByteOrder.nativeOrder());
+		for(int i=0;i<node_count;i++){
+			buffer.putInt(left[i]);
+			buffer.putInt(right[i]);
+			buffer.putInt(hop[i]);
+		}
+		nodes=buffer;
+		left=null;
+		right=null;
+		hop=null;
+	}
+
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(int addr){
+		if(nodes!=null){
+			return lookup_off_heap(addr);
+		}
+		int temp=0;
+		int id=hop[0];
+		for(int i=31;i>=0;i--){
+			temp = ((addr>>>i) & 1)==1 ? right[temp] : left[temp];
+			if(temp==0){
+				break;
+			}
+			if(hop[temp]!=0){
+				id=hop[temp];
+			}
+		}
+		return id==0 ? next_hop_table.NO_ROUTE : id-1;
+	}
+
+	//Same walk reading the direct buffer
+	private int lookup_off_heap(int addr){
+		ByteBuffer buffer=nodes;
+		int temp=0;
+		int id=buffer.getInt(8);
+		for(int i=31;i>=0;i--){
+			temp = buffer.getInt(temp*NODE_BYTES+(((addr>>>i) & 1)<<2));
+			if(temp==0){
+				break;
+			}
+			int node_hop = buffer.getInt(temp*NODE_BYTES+8);
+			if(node_hop!=0){
+				id=node_hop;
+			}
+		}
+		return id==0 ? next_hop_table.NO_ROUTE : id-1;
+	}
+
+	//Memory used by the nodes in bytes
+	public long footprint(){
+		return (long)NODE_BYTES*(nodes!=null ? node_count : left.length);
+	}
+
+	public String describe(){
+		return "Flat Trie memory :: "+footprint()/1024+"KB ("+node_count+" nodes"+(nodes!=null ? ", off-heap" : "")+")";
+	}
+
+	public String name(){
+		return "flat";
+	}
+
+	//nodes are created by insert
+	public void build(){
+	}
+
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+}
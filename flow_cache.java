@@ -0,0 +1,114 @@
+import java.util.function.IntUnaryOperator;
+
+/*
+ * Flow Cache
+ * Fixed size destination cache in front of any lookup approach returning next
+ * hop ids. Addresses map to a set of WAYS slots held in primitive arrays; a
+ * full set evicts with the CLOCK algorithm (reference bit cleared as the hand
+ * passes, first slot found with a clear bit is replaced).
+ * invalidate() drops every entry in O(1) by moving to a new epoch, entries of
+ * older epochs count as empty. Meant to be called on every route change.
+ * get() is for one lookup thread per cache, invalidate() may be called from any thread.
+ */
+class flow_cache{
+	static final int WAYS = 8;
+
+	public int keys[];
+	//next hop ids
+	public int values[];
+	//epoch the slot was filled in, 0 = never filled
+	private int stamp[];
+	private boolean referenced[];
+	private int hand[];
+	private int set_mask;
+	private int set_shift;
+	private volatile int epoch=1;
+	private IntUnaryOperator engine;
+
+	public long hits=0;
+	public long misses=0;
+	public long evictions=0;
+	public long invalidations=0;
+
+	/*
+	 * Cache of at least size entries (rounded up to a power of two) in front of engine
+	 */
+	flow_cache(int size, IntUnaryOperator engine){
+		int capacity=WAYS;
+		while(capacity<size){
+			capacity<<=1;
+		}
+		keys = new int[capacity];
+		values = new int[capacity];
+		stamp = new int[capacity];
+		referenced = new boolean[capacity];
+		hand = new int[capacity/WAYS];
+		set_mask = capacity/WAYS-1;
+		set_shift = 32-Integer.numberOfTrailingZeros(capacity/WAYS);
+		this.engine=engine;
+	}
+
+	/*
+	 * Next hop id for the address, from the cache or from the engine on a miss
+	 */
+	public int get(int addr){
+		//epoch is read before the engine, so a route change during the lookup stamps the entry with the old epoch and it is never served
+		int e = epoch;
+		int base = (((addr*0x9E3779B9)>>>set_shift) & set_mask)*WAYS;
+		for(int w=base;w<base+WAYS;w++){
+			if(stamp[w]==e && keys[w]==addr){
+				referenced[w]=true;
+				hits++;
+				return values[w];
+			}
+		}
+		misses++;
+		int next_hop = engine.applyAsInt(addr);
+		int slot = victim(base,e);
+		keys[slot]=addr;
+		values[slot]=next_hop;
+		stamp[slot]=e;
+		referenced[slot]=true;
+		return next_hop;
+	}
+
+	//Empty or stale slot of the set, else CLOCK victim
+	private int victim(int base, int e){
+		for(int w=base;w<base+WAYS;w++){
+			if(stamp[w]!=e){
+				return w;
+			}
+		}
+		int set = base/WAYS;
+		while(referenced[base+hand[set]]){
+			referenced[base+hand[set]]=false;
+			hand[set]=(hand[set]+1)%WAYS;
+		}
+		int slot = base+hand[set];
+		hand[set]=(hand[set]+1)%WAYS;
+		evictions++;
+		return slot;
+	}
+
+	/*
+	 * Drop all entries, called after a route change
+	 */
+	public synchronized void invalidate(){
+		epoch++;
+		invalidations++;
+	}
+
+	public int capacity(){
+		return keys.length;
+	}
+
+	/*
+	 * Display hit/miss/eviction counters
+	 */
+	public void print_stats(){
+		long total = hits+misses;
+		System.out.println("Flow cache :: entries "+keys.length+" hits "+hits+" misses "+misses
+				+" evictions "+evictions+" invalidations "+invalidations
+				+" hit rate "+(total==0 ? 0 : hits*100/total)+"%");
+	}
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+/*
+ * Int Hash table
+ * Open addressing hash table with int keys and non negative int values stored
+ * in two primitive arrays (linear probing, kept at most half full).
+ * get() returns -1 for a missing key.
+ */
+class int_hash{
+	public int keys[];
+	public int values[];
+	public int size=0;
+	private int shift;
+
+	int_hash(){
+		this(16);
+	}
+
+	int_hash(int expected){
+		int capacity=16;
+		while(capacity<expected*2){
+			capacity<<=1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity){
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(values,-1);
+		shift = 32-Integer.numberOfTrailingZeros(capacity);
+	}
+
+	//Fibonacci hashing, top bits of key * 2^32/golden ratio
+	private int slot(int key){
+		return (key*0x9E3779B9)>>>shift;
+	}
+
+	/*
+	 * Store value(>=0) for key, replacing the old value
+	 */
+	public void put(int key, int value){
+		if(value<0){
+			throw new IllegalArgumentException("Negative value :: "+value);
+		}
+		if((size+1)*2>keys.length){
+			int old_keys[]=keys;
+			int old_values[]=values;
+			allocate(keys.length*2);
+			size=0;
+			for(int i=0;i<old_keys.length;i++){
+				if(old_values[i]>=0){
+					put(old_keys[i],old_values[i]);
+				}
+			}
+		}
+		int mask=keys.length-1;
+		int i=slot(key);
+		while(values[i]>=0 && keys[i]!=key){
+			i=(i+1)&mask;
+		}
+		if(values[i]<0){
+			size++;
+		}
+		keys[i]=key;
+		values[i]=value;
+	}
+
+	public int get(int key){
+		int mask=keys.length-1;
+		int i=slot(key);
+		while(values[i]>=0){
+			if(keys[i]==key){
+				return values[i];
+			}
+			i=(i+1)&mask;
+		}
+		return -1;
+	}
+
+	public boolean containsKey(int key){
+		return get(key)>=0;
+	}
+
+	//Memory used by the arrays in bytes
+	public long footprint(){
+		return 8L*keys.length;
+	}
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+
+/*
+ * Interval Table
+ * Read-only engine for static FIBs. build() turns the prefixes into the
+ * sorted, disjoint address ranges they split the address space into, one
+ * next hop per range, merging neighbours with the same next hop. A lookup is
+ * a binary search for the range holding the address.
+ * The range starts are stored in Eytzinger order (the implicit binary search
+ * tree laid out breadth first, root at 1), so the first levels of every
+ * search share a few cache lines and each step reads the children of the
+ * last node next to each other. The search has no data dependent branch: it
+ * walks down to a leaf and ends at the first start above the address, whose
+ * slot holds the next hop of the range before it, the range of the address.
+ * Starts are stored with the sign bit flipped so signed compares order them
+ * as unsigned addresses. 8 bytes per range.
+ */
+class interval_table implements lpm_engine{
+	//range starts in Eytzinger order, sign bit flipped, index 0 unused
+	public int start[];
+	//next hop id of the range before start[k]; hop[0] is the next hop of the last range
+	public int hop[];
+	public int range_count=0;
+	public next_hop_table next_hops;
+	//routes waiting for build(), packed like trie_builder keys
+	private long keys[] = new long[1024];
+	private int hops[] = new int[1024];
+	private int count=0;
+
+	interval_table(){
+		this(Iplookup.next_hops);
+	}
+
+	interval_table(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Add network prefix of CIDR length
+	 * Ranges are computed by build()
+	 */
+	public void insert(int prefix, int CIDR, String next_hop){
+		insert(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		if(start!=null){
+			throw new IllegalStateException("Interval table already built");
+		}
+		if(count==trie_builder.MAX_ROUTES){
+			throw new IllegalStateException("More than "+trie_builder.MAX_ROUTES+" routes");
+		}
+		if(count==keys.length){
+			keys = Arrays.copyOf(keys,count*2);
+			hops = Arrays.copyOf(hops,count*2);
+		}
+		long masked = prefix & (CIDR==0 ? 0 : -1<<(32-CIDR)) & 0xffffffffL;
+		//sorted by start, then shorter first, so a prefix comes after the prefixes covering it
+		keys[count] = (masked<<32 | (long)CIDR<<26 | count) ^ Long.MIN_VALUE;
+		hops[count] = next_hop;
+		count++;
+	}
+
+	/*
+	 * Sweep the sorted prefixes with a stack of the prefixes covering the
+	 * current address, emitting a range wherever the innermost one changes,
+	 * then lay the range starts out in Eytzinger order
+	 */
+	public void build(){
+		long sorted[] = Arrays.copyOf(keys,count);
+		Arrays.parallelSort(sorted);
+		//at most two ranges per prefix and one for the end of the address space
+		long range_start[] = new long[2*count+1];
+		int range_hop[] = new int[2*count+1];
+		int n=0;
+		long stack_end[] = new long[33];
+		int stack_hop[] = new int[33];
+		int depth=0;
+		long at=0;
+		for(int i=0;i<count;i++){
+			long key = sorted[i]^Long.MIN_VALUE;
+			//a prefix added again keeps the next hop added last, which sorts last
+			if(i+1<count && (sorted[i+1]^Long.MIN_VALUE)>>>26==key>>>26){
+				continue;
+			}
+			long first = key>>>32;
+			int CIDR = (int)(key>>>26) & 63;
+			long last = first+(1L<<(32-CIDR))-1;
+			//close the prefixes that end before this one
+			while(depth>0 && stack_end[depth-1]<first){
+				if(at<=stack_end[depth-1]){
+					n = add(range_start,range_hop,n,at,stack_hop[depth-1]);
+					at = stack_end[depth-1]+1;
+				}
+				depth--;
+			}
+			if(at<first){
+				n = add(range_start,range_hop,n,at,depth>0 ? stack_hop[depth-1] : next_hop_table.NO_ROUTE);
+				at=first;
+			}
+			stack_end[depth]=last;
+			stack_hop[depth]=hops[(int)(key & (trie_builder.MAX_ROUTES-1))];
+			depth++;
+		}
+		while(depth>0){
+			if(at<=stack_end[depth-1]){
+				n = add(range_start,range_hop,n,at,stack_hop[depth-1]);
+				at = stack_end[depth-1]+1;
+			}
+			depth--;
+		}
+		if(at<=0xffffffffL){
+			n = add(range_start,range_hop,n,at,next_hop_table.NO_ROUTE);
+		}
+		range_count=n;
+		start = new int[n+1];
+		hop = new int[n+1];
+		hop[0]=range_hop[n-1];
+		int next[] = {0};
+		layout(range_start,range_hop,next,1);
+		keys=null;
+		hops=null;
+	}
+
+	//Append range [at, ...) with next_hop, or extend the last range when it has the same next hop
+	private static int add(long range_start[], int range_hop[], int n, long at, int next_hop){
+		if(n>0 && range_hop[n-1]==next_hop){
+			return n;
+		}
+		range_start[n]=at;
+		range_hop[n]=next_hop;
+		return n+1;
+	}
+
+	//In-order walk of the implicit tree fills slot k from the sorted ranges
+	private void layout(long range_start[], int range_hop[], int next[], int k){
+		if(k>range_count){
+			return;
+		}
+		layout(range_start,range_hop,next,2*k);
+		int i = next[0]++;
+		start[k] = (int)range_start[i] ^ Integer.MIN_VALUE;
+		hop[k] = i>0 ? range_hop[i-1] : next_hop_table.NO_ROUTE;
+		layout(range_start,range_hop,next,2*k+1);
+	}
+
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(int addr){
+		int key = addr ^ Integer.MIN_VALUE;
+		int n = range_count;
+		int k=1;
+		while(k<=n){
+			//right child when start[k] <= key, without a branch
+			k = 2*k+(int)(((long)start[k]-key-1)>>>63);
+		}
+		//drop the right turns taken after the last left turn, k is the first start above key or 0
+		k >>>= Integer.numberOfTrailingZeros(~k)+1;
+		return hop[k];
+	}
+
+	//Memory used by the range arrays in bytes
+	public long footprint(){
+		return 8L*start.length;
+	}
+
+	public String describe(){
+		return "Interval Table memory :: "+footprint()/1024+"KB ("+range_count+" ranges)";
+	}
+
+	public String name(){
+		return "interval";
+	}
+
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+}
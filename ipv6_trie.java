@@ -0,0 +1,307 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/*
+ * IPv6 Multibit Trie
+ * Longest prefix match for 128 bit addresses held as two longs (high and low
+ * 64 bits), so neither building nor lookup creates Strings.
+ * Same controlled prefix expansion as multibit_trie, using its mb_node.
+ * Default strides 16-8-8-... put level boundaries on /16, /24, /32, /40, /48,
+ * /56 and /64, the lengths that dominate real IPv6 tables (/48 and /32 most of
+ * all), so those need no expansion and a /48 is found in 5 array reads.
+ * A level never spans the high and low long.
+ */
+class ipv6_trie{
+	static final String DEFAULT_STRIDES = "16-8-8-8-8-8-8-8-8-8-8-8-8-8-8";
+	//printed for addresses without route, the IPv4 default hop makes no sense here
+	static final String DEFAULT_HOP = "::";
+
+	public mb_node root;
+	public next_hop_table next_hops;
+	public int strides[];
+	//bit offset of each level inside the 128 bit address
+	private int offset[];
+	public int node_count=0;
+
+	ipv6_trie(int strides[]){
+		this(strides,Iplookup.next_hops);
+	}
+
+	ipv6_trie(int strides[], next_hop_table next_hops){
+		this.next_hops=next_hops;
+		int sum=0;
+		for(int i=0;i<strides.length;i++){
+			if(strides[i]<=0 || strides[i]>24){
+				throw new IllegalArgumentException("Invalid stride :: "+strides[i]);
+			}
+			if(sum<64 && sum+strides[i]>64){
+				throw new IllegalArgumentException("Stride crosses bit 64 at level "+i);
+			}
+			sum+=strides[i];
+		}
+		if(sum!=128){
+			throw new IllegalArgumentException("Strides must add up to 128 bits, got "+sum);
+		}
+		this.strides=strides;
+		this.offset=new int[strides.length];
+		for(int i=1;i<strides.length;i++){
+			offset[i]=offset[i-1]+strides[i-1];
+		}
+		this.root=new mb_node(strides[0],strides.length==1);
+		node_count=1;
+	}
+
+	/*
+	 * Insert network prefix high:low of CIDR length
+	 * Prefix is expanded to the end of the level it falls in; a slot already owned
+	 * by a longer prefix is left untouched
+	 */
+	public void insert(long high, long low, int CIDR, String next_hop){
+		insert(high,low,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(long high, long low, int CIDR, int next_hop){
+		if(CIDR<0 || CIDR>128){
+			throw new IllegalArgumentException("Invalid CIDR :: "+CIDR);
+		}
+		mb_node temp=root;
+		int level=0;
+		//walk down the levels that are fully covered by the prefix
+		while(CIDR>offset[level]+strides[level]){
+			int index = slot(high,low,level);
+			if(temp.child[index]==null){
+				temp.child[index]=new mb_node(strides[level+1],level+2==strides.length);
+				node_count++;
+			}
+			temp=temp.child[index];
+			level++;
+		}
+		//expand remaining bits of the prefix inside this level
+		int free_bits = offset[level]+strides[level]-CIDR;
+		int first = slot(high,low,level) & ~((1<<free_bits)-1);
+		int last = first+(1<<free_bits);
+		for(int i=first;i<last;i++){
+			//lengths up to 128 are kept in a byte, compared unsigned
+			if((temp.length[i] & 0xff)<=CIDR){
+				temp.next_hop[i]=next_hop;
+				temp.length[i]=(byte)CIDR;
+			}
+		}
+	}
+
+	//Index of the slot for the address in the given level
+	private int slot(long high, long low, int level){
+		int end = offset[level]+strides[level];
+		long word = end<=64 ? high : low;
+		return (int)(word >>> ((128-end) & 63)) & ((1<<strides[level])-1);
+	}
+
+	/*
+	 * Longest prefix match for a 128 bit address
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(long high, long low){
+		mb_node temp=root;
+		int next_hop=next_hop_table.NO_ROUTE;
+		for(int level=0;temp!=null;level++){
+			int index = slot(high,low,level);
+			if(temp.next_hop[index]>=0){
+				next_hop=temp.next_hop[index];
+			}
+			temp = temp.child==null ? null : temp.child[index];
+		}
+		return next_hop;
+	}
+
+	/*
+	 * Memory used by the nodes in bytes
+	 * 4 byte next hop, 1 byte length and 4 byte child reference per slot
+	 */
+	public long footprint(){
+		return footprint(root,0);
+	}
+
+	private long footprint(mb_node temp, int level){
+		long bytes = (temp.child==null ? 5L : 9L)<<strides[level];
+		if(temp.child!=null){
+			for(mb_node child: temp.child){
+				if(child!=null){
+					bytes+=footprint(child,level+1);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/*
+	 * Parse IPv6 address stored as ASCII bytes in buf[from..to) into dst[at] (high
+	 * 64 bits) and dst[at+1] (low 64 bits)
+	 * Accepts hex groups with one "::", absolute reads, nothing is allocated
+	 */
+	public static void parse_addr6(ByteBuffer buf, int from, int to, long dst[], int at){
+		//groups before and after "::"
+		long head_high=0, head_low=0, tail_high=0, tail_low=0;
+		int head=0, tail=0, group=0, digits=0;
+		boolean compressed=false;
+		//true after a single ':' until the next group
+		boolean expect_group=false;
+		int i=from;
+		if(to-from>=2 && buf.get(from)==':' && buf.get(from+1)==':'){
+			compressed=true;
+			i=from+2;
+		}
+		for(;i<to;i++){
+			byte c = buf.get(i);
+			int v = hex(c);
+			if(v>=0){
+				if(digits==4){
+					throw new NumberFormatException("Invalid IPv6 address at byte "+i);
+				}
+				group=(group<<4)|v;
+				digits++;
+				expect_group=false;
+			}else if(c==':' && digits>0){
+				if(compressed){
+					tail_high=(tail_high<<16)|(tail_low>>>48);
+					tail_low=(tail_low<<16)|group;
+					tail++;
+				}else{
+					head_high=(head_high<<16)|(head_low>>>48);
+					head_low=(head_low<<16)|group;
+					head++;
+				}
+				group=0;
+				digits=0;
+				if(i+1<to && buf.get(i+1)==':'){
+					if(compressed){
+						throw new NumberFormatException("Invalid IPv6 address at byte "+i);
+					}
+					compressed=true;
+					i++;
+				}else{
+					expect_group=true;
+				}
+			}else{
+				throw new NumberFormatException("Invalid IPv6 address at byte "+i);
+			}
+		}
+		if(digits>0){
+			if(compressed){
+				tail_high=(tail_high<<16)|(tail_low>>>48);
+				tail_low=(tail_low<<16)|group;
+				tail++;
+			}else{
+				head_high=(head_high<<16)|(head_low>>>48);
+				head_low=(head_low<<16)|group;
+				head++;
+			}
+		}else if(expect_group || !compressed){
+			throw new NumberFormatException("Invalid IPv6 address at byte "+from);
+		}
+		if(compressed ? head+tail>7 : head!=8){
+			throw new NumberFormatException("Invalid IPv6 address at byte "+from);
+		}
+		//move the head groups above the zeros "::" stands for
+		int shift = 16*(8-head);
+		if(shift>=128){
+			head_high=0;
+			head_low=0;
+		}else if(shift>=64){
+			head_high=head_low<<(shift-64);
+			head_low=0;
+		}else if(shift>0){
+			head_high=(head_high<<shift)|(head_low>>>(64-shift));
+			head_low<<=shift;
+		}
+		dst[at]=head_high|tail_high;
+		dst[at+1]=head_low|tail_low;
+	}
+
+	/*
+	 * Parse IPv6 address text, for command line and test input
+	 */
+	public static void parse_addr6(CharSequence input, long dst[], int at){
+		byte text[] = new byte[input.length()];
+		for(int i=0;i<text.length;i++){
+			char c = input.charAt(i);
+			text[i] = c<128 ? (byte)c : (byte)'?';
+		}
+		try{
+			parse_addr6(ByteBuffer.wrap(text),0,text.length,dst,at);
+		}catch(NumberFormatException e){
+			throw new NumberFormatException("Invalid IPv6 address :: "+input);
+		}
+	}
+
+	//Value of a hex digit, -1 for anything else
+	private static int hex(byte c){
+		if(c>='0' && c<='9'){
+			return c-'0';
+		}
+		if(c>='a' && c<='f'){
+			return c-'a'+10;
+		}
+		if(c>='A' && c<='F'){
+			return c-'A'+10;
+		}
+		return -1;
+	}
+
+	/*
+	 * Write 128 bit address in the short text form (lower case, longest run of
+	 * two or more zero groups as "::") without creating a String
+	 */
+	public static void write_addr6(Writer w, long high, long low) throws IOException{
+		//longest run of zero groups
+		int best=-1, best_len=0;
+		for(int g=0, run=0;g<8;g++){
+			if(group(high,low,g)==0){
+				run++;
+				if(run>best_len){
+					best_len=run;
+					best=g-run+1;
+				}
+			}else{
+				run=0;
+			}
+		}
+		if(best_len<2){
+			best=-1;
+		}
+		for(int g=0;g<8;g++){
+			if(g==best){
+				w.write("::");
+				g+=best_len-1;
+				continue;
+			}
+			if(g>0 && g!=best+best_len){
+				w.write(':');
+			}
+			int v = group(high,low,g);
+			boolean started=false;
+			for(int shift=12;shift>=0;shift-=4){
+				int d=(v>>>shift)&15;
+				if(d!=0 || started || shift==0){
+					w.write(d<10 ? '0'+d : 'a'+d-10);
+					started=true;
+				}
+			}
+		}
+	}
+
+	//16 bit group g (0 = most significant) of the address
+	private static int group(long high, long low, int g){
+		return (int)((g<4 ? high : low) >>> (48-16*(g&3))) & 0xffff;
+	}
+
+	//Short text form of the address
+	public static String get_text6(long high, long low){
+		StringWriter w = new StringWriter(40);
+		try{
+			write_addr6(w,high,low);
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+		return w.toString();
+	}
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+
+/*
+ * Length Hash
+ * Binary search on prefix lengths (Waldvogel et al.)
+ * One int_hash per distinct prefix length maps the masked prefix to a next hop id.
+ * Every prefix leaves marker entries at the shorter lengths its binary search
+ * passes through, so a hit means "try longer lengths". A marker stores the best
+ * matching prefix of its own bits, which is the answer if no longer probe hits.
+ * A lookup needs at most log2(distinct lengths)+1 probes, about 5 for real tables.
+ */
+class length_hash implements lpm_engine{
+	//distinct prefix lengths, sorted, and their hash tables and masks
+	public int length[];
+	public int_hash table[];
+	private int mask[];
+	public int marker_count=0;
+	public int prefix_count=0;
+	//next hop id of a /0 route
+	private int default_hop=next_hop_table.NO_ROUTE;
+	public next_hop_table next_hops;
+	//routes waiting for build()
+	private ArrayList<int[]> routes = new ArrayList<int[]>();
+
+	length_hash(){
+		this(Iplookup.next_hops);
+	}
+
+	length_hash(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Add network prefix of CIDR length
+	 * Tables are filled by build()
+	 */
+	public void insert(int prefix, int CIDR, String next_hop){
+		insert(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		routes.add(new int[]{prefix, CIDR, next_hop});
+	}
+
+	private static int get_mask(int CIDR){
+		return CIDR==0 ? 0 : -1<<(32-CIDR);
+	}
+
+	/*
+	 * Build per length tables of prefixes, then add markers
+	 */
+	public void build(){
+		int_hash real[] = new int_hash[33];
+		for(int route[]: routes){
+			int CIDR=route[1];
+			if(CIDR==0){
+				default_hop=route[2];
+				continue;
+			}
+			if(real[CIDR]==null){
+				real[CIDR]=new int_hash();
+			}
+			real[CIDR].put(route[0] & get_mask(CIDR),route[2]);
+		}
+		int m=0;
+		for(int len=1;len<=32;len++){
+			if(real[len]!=null){
+				m++;
+			}
+		}
+		length = new int[m];
+		table = new int_hash[m];
+		mask = new int[m];
+		m=0;
+		for(int len=1;len<=32;len++){
+			if(real[len]!=null){
+				length[m]=len;
+				mask[m]=get_mask(len);
+				table[m]=new int_hash(real[len].size);
+				for(int i=0;i<real[len].keys.length;i++){
+					if(real[len].values[i]>=0){
+						table[m].put(real[len].keys[i],real[len].values[i]);
+					}
+				}
+				prefix_count+=real[len].size;
+				m++;
+			}
+		}
+		//markers on the binary search path of every prefix
+		for(int k=0;k<length.length;k++){
+			int_hash prefixes = real[length[k]];
+			for(int i=0;i<prefixes.keys.length;i++){
+				if(prefixes.values[i]<0){
+					continue;
+				}
+				int key = prefixes.keys[i];
+				int lo=0, hi=length.length-1;
+				while(lo<=hi){
+					int mid=(lo+hi)>>>1;
+					if(mid==k){
+						break;
+					}
+					if(mid<k){
+						int marker = key & mask[mid];
+						if(!table[mid].containsKey(marker)){
+							table[mid].put(marker,best_match(real,marker,length[mid]));
+							marker_count++;
+						}
+						lo=mid+1;
+					}else{
+						hi=mid-1;
+					}
+				}
+			}
+		}
+		routes = null;
+	}
+
+	//Longest real prefix covering key/CIDR, used for marker values
+	private int best_match(int_hash real[], int key, int CIDR){
+		for(int len=CIDR;len>0;len--){
+			if(real[len]!=null){
+				int id = real[len].get(key & get_mask(len));
+				if(id>=0){
+					return id;
+				}
+			}
+		}
+		return default_hop;
+	}
+
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Binary search over prefix lengths: a hit moves to longer lengths, a miss to shorter
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(int addr){
+		int best=default_hop;
+		int lo=0, hi=length.length-1;
+		while(lo<=hi){
+			int mid=(lo+hi)>>>1;
+			int id = table[mid].get(addr & mask[mid]);
+			if(id>=0){
+				best=id;
+				lo=mid+1;
+			}else{
+				hi=mid-1;
+			}
+		}
+		return best;
+	}
+
+	//Hash probes needed in the worst case
+	public int max_probes(){
+		return 32-Integer.numberOfLeadingZeros(length.length);
+	}
+
+	//Memory used by the hash tables in bytes
+	public long footprint(){
+		long bytes=0;
+		for(int_hash h: table){
+			bytes+=h.footprint();
+		}
+		return bytes;
+	}
+
+	public String describe(){
+		return "Prefix lengths :: "+length.length+" max probes :: "+max_probes()+" prefixes :: "+prefix_count
+				+" markers :: "+marker_count+" memory :: "+footprint()/1024+"KB";
+	}
+
+	public String name(){
+		return "hash";
+	}
+
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+}
@@ -0,0 +1,186 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/*
+ * Lookup Benchmark
+ * Measures the lookup approaches on synthetic tables from prefix_generator,
+ * in the style of a JMH average time benchmark: every engine gets warmup
+ * iterations so the JIT has compiled the lookup, then timed iterations of a
+ * fixed duration, each over the same address set. Reports ns/lookup (with
+ * 99.9% error), Mlookups/s and bytes allocated per lookup.
+ * To run the program:
+ * java lookup_bench [table sizes, default 10000,100000,500000] [engines, default all] [iterations, default 5]
+ */
+class lookup_bench{
+	static final int ADDRESSES = 1<<20;
+	static final long ITERATION_NANOS = 1000000000L;
+	static final String ENGINES[] = {"trie","ortc","multibit","bitmap","dir24","flat","hash","bloom","interval","naive"};
+
+	//consumes results so the JIT cannot drop the lookups
+	static volatile long sink;
+
+	/*
+	 * One lookup approach under test
+	 * lookup(i) looks up address i of the data set and returns a non zero value on a match
+	 */
+	static abstract class target{
+		int addr[];
+		String text[];
+
+		abstract void build(prefix_generator gen);
+
+		abstract int lookup(int i);
+	}
+
+	/*
+	 * Any lpm_engine, built by engine_selector from the generated routes
+	 */
+	static class engine_target extends target{
+		String name;
+		lpm_engine engine;
+
+		engine_target(String name){
+			this.name=name;
+		}
+
+		void build(prefix_generator gen){
+			engine_selector routes = new engine_selector();
+			for(int i=0;i<gen.prefix.length;i++){
+				routes.add(gen.prefix[i],gen.length[i],gen.next_hop[i]);
+			}
+			engine = routes.build(name);
+		}
+
+		int lookup(int i){
+			return engine.lookup(addr[i])==next_hop_table.NO_ROUTE ? 0 : 1;
+		}
+	}
+
+	//Engines that are not an lpm_engine built from the routes have their own target
+	static target create(String engine){
+		if(engine.equals("ortc")){
+			return new target(){
+				trie lp_trie;
+				void build(prefix_generator gen){
+					ortc_compressor ortc = new ortc_compressor();
+					for(int i=0;i<gen.prefix.length;i++){
+						ortc.add(gen.prefix[i],gen.length[i],Iplookup.next_hops.intern(gen.next_hop[i]));
+					}
+					ortc.compress();
+					lp_trie = new trie();
+					for(int i=0;i<ortc.output_count;i++){
+						lp_trie.insert(ortc.prefix[i],ortc.length[i],ortc.next_hop[i]);
+					}
+				}
+				int lookup(int i){
+					return lp_trie.lookup(addr[i])==next_hop_table.NO_ROUTE ? 0 : 1;
+				}
+			};
+		}else if(engine.equals("naive")){
+			return new target(){
+				Iplookup Ip = new Iplookup();
+				ArrayList<String> subnet = Ip.get_all_subnet_mask();
+				void build(prefix_generator gen){
+					Iplookup.forwarding_table.clear();
+					for(int i=0;i<gen.prefix.length;i++){
+						String dotted = Iplookup.get_dotted(gen.prefix[i]);
+						String subnet_mask = Ip.get_subnet_mask(gen.length[i]);
+						Iplookup.forwarding_table.put(Ip.getkey(dotted,subnet_mask),new value(Iplookup.next_hops.intern(gen.next_hop[i]),gen.length[i]));
+					}
+				}
+				int lookup(int i){
+					return Ip.naive_find(text[i],subnet)==null ? 0 : 1;
+				}
+			};
+		}else if(!Arrays.asList(engine_selector.ENGINES).contains(engine)){
+			throw new IllegalArgumentException("Unknown engine :: "+engine);
+		}
+		return new engine_target(engine);
+	}
+
+	//Bytes allocated so far by the current thread
+	static long allocated(){
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/*
+	 * Run lookups over the data set for one iteration
+	 * result[0] = lookups, result[1] = nanoseconds, result[2] = bytes allocated
+	 */
+	static void iteration(target t, long result[]){
+		int n = t.addr.length;
+		long lookups=0;
+		long matched=0;
+		long bytes = allocated();
+		long st = System.nanoTime();
+		long et;
+		int i=0;
+		do{
+			for(int k=0;k<1024;k++){
+				matched+=t.lookup(i);
+				i = i+1==n ? 0 : i+1;
+			}
+			lookups+=1024;
+			et = System.nanoTime();
+		}while(et-st<ITERATION_NANOS);
+		result[2] = allocated()-bytes;
+		result[1] = et-st;
+		result[0] = lookups;
+		sink+=matched;
+	}
+
+	static void bench(String engine, prefix_generator gen, int addr[], String text[], int iterations){
+		target t = create(engine);
+		t.addr=addr;
+		t.text=text;
+		long st = System.currentTimeMillis();
+		t.build(gen);
+		long build = System.currentTimeMillis()-st;
+		long result[] = new long[3];
+		//warmup
+		for(int k=0;k<iterations;k++){
+			iteration(t,result);
+		}
+		double ns[] = new double[iterations];
+		double mean=0;
+		long lookups=0, nanos=0, bytes=0;
+		for(int k=0;k<iterations;k++){
+			iteration(t,result);
+			ns[k] = (double)result[1]/result[0];
+			mean+=ns[k]/iterations;
+			lookups+=result[0];
+			nanos+=result[1];
+			bytes+=result[2];
+		}
+		double var=0;
+		for(int k=0;k<iterations;k++){
+			var+=(ns[k]-mean)*(ns[k]-mean);
+		}
+		//99.9% error assuming normal distribution, as JMH prints it
+		double error = iterations>1 ? 3.29*Math.sqrt(var/(iterations-1))/Math.sqrt(iterations) : 0;
+		System.out.println(String.format("%-9s %9d %8d %10.2f +- %-7.2f %10.2f %10.3f %10.1f",
+				engine,gen.prefix.length,build,mean,error,lookups*1000.0/nanos,
+				(double)bytes/lookups,bytes*1000.0/nanos));
+	}
+
+	public static void main(String args[]){
+		String sizes[] = (args.length>0 ? args[0] : "10000,100000,500000").split(",");
+		String engines[] = args.length>1 && !args[1].equals("all") ? args[1].split(",") : ENGINES;
+		int iterations = args.length>2 ? Integer.parseInt(args[2]) : 5;
+		System.out.println(String.format("%-9s %9s %8s %20s %10s %10s %10s",
+				"engine","routes","build ms","ns/lookup","Mlookup/s","B/lookup","MB/s alloc"));
+		for(String size: sizes){
+			prefix_generator gen = new prefix_generator(1);
+			gen.generate_routes(Integer.parseInt(size),256);
+			int addr[] = gen.generate_addresses(ADDRESSES,0.8);
+			String text[] = new String[addr.length];
+			for(int i=0;i<addr.length;i++){
+				text[i]=Iplookup.get_dotted(addr[i]);
+			}
+			for(String engine: engines){
+				bench(engine,gen,addr,text,iterations);
+			}
+		}
+	}
+}
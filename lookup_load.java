@@ -0,0 +1,277 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+
+/*
+ * Lookup Load
+ * Load generator for lookup_server. Sends the test file's addresses in
+ * batches, keeping window requests outstanding, from one thread on a
+ * non-blocking DatagramChannel. Every reply's round trip is recorded after
+ * the warmup second; a request unanswered after TIMEOUT counts as lost and
+ * its slot is reused. Reports sustained requests/s and lookups/s and the
+ * latency percentiles. With an output file, the next hops last received for
+ * every address are written in the Iplookup output format.
+ * To run the program:
+ * java lookup_load <test file> [host:port, default localhost:5300] [batch, default 64]
+ *                  [seconds, default 10] [window, default 16] [output file]
+ */
+class lookup_load{
+	static final long TIMEOUT = 1000000000L;
+	static final long WARMUP = 1000000000L;
+	static final int SOCKET_BUFFER = lookup_server.SOCKET_BUFFER;
+
+	public static void main(String args[]) throws IOException{
+		if(args.length<1){
+			System.out.println("java lookup_load <test file> [host:port] [batch] [seconds] [window] [output file]");
+			return;
+		}
+		String target = args.length>1 ? args[1] : "localhost:"+lookup_server.DEFAULT_PORT;
+		int batch = args.length>2 ? Integer.parseInt(args[2]) : 64;
+		long duration = (args.length>3 ? Long.parseLong(args[3]) : 10)*1000000000L;
+		int window = args.length>4 ? Integer.parseInt(args[4]) : 16;
+		String outfile = args.length>5 ? args[5] : null;
+		if(batch<1 || batch>lookup_server.MAX_BATCH || window<1){
+			throw new IllegalArgumentException("batch must be 1-"+lookup_server.MAX_BATCH+" and window positive");
+		}
+		final int test[][] = {new int[1<<16]};
+		final int n[] = {0};
+		mapped_loader.read_addresses(args[0],1<<16,new mapped_loader.address_handler(){
+			public void addresses(int addr[], int count){
+				if(n[0]+count>test[0].length){
+					test[0] = Arrays.copyOf(test[0],Math.max(test[0].length*2,n[0]+count));
+				}
+				System.arraycopy(addr,0,test[0],n[0],count);
+				n[0]+=count;
+			}
+		});
+		if(n[0]==0){
+			throw new IllegalArgumentException("No addresses in "+args[0]);
+		}
+		int colon = target.lastIndexOf(':');
+		InetSocketAddress server = new InetSocketAddress(target.substring(0,colon),Integer.parseInt(target.substring(colon+1)));
+		lookup_load load = new lookup_load(test[0],n[0],batch,window,outfile!=null);
+		load.run(server,duration);
+		load.print_stats();
+		if(outfile!=null){
+			load.write(outfile);
+		}
+	}
+
+	private int addr[];
+	private int n;
+	private int batch;
+	private int window;
+	//id, send time and first address index of the request in every slot, id -1 when free
+	//ids are uses*window+slot, so a reply finds its slot and a late reply is told apart
+	private int slot_id[];
+	private int slot_uses[];
+	private long slot_sent[];
+	private int slot_start[];
+	private int free[];
+	private int free_count;
+	private int cursor=0;
+	private ByteBuffer request;
+	private ByteBuffer reply;
+	//next hops received per address, when written to a file
+	private int result[];
+	private boolean answered[];
+
+	private long latency[] = new long[1<<16];
+	public long recorded=0;
+	public long sent=0;
+	public long received=0;
+	public long lost=0;
+	public long late=0;
+	//measured interval, from the end of the warmup
+	private long measured=0;
+	private long measured_lookups=0;
+
+	lookup_load(int addr[], int n, int batch, int window, boolean keep_results){
+		this.addr=addr;
+		this.n=n;
+		this.batch=batch;
+		this.window=window;
+		slot_id = new int[window];
+		slot_uses = new int[window];
+		slot_sent = new long[window];
+		slot_start = new int[window];
+		free = new int[window];
+		for(int i=0;i<window;i++){
+			slot_id[i]=-1;
+			free[i]=window-1-i;
+		}
+		free_count=window;
+		request = ByteBuffer.allocateDirect(lookup_server.HEADER+4*batch);
+		reply = ByteBuffer.allocateDirect(lookup_server.HEADER+4*lookup_server.MAX_BATCH+1);
+		if(keep_results){
+			result = new int[n];
+			answered = new boolean[n];
+		}
+	}
+
+	/*
+	 * Keep window requests in flight for duration nanoseconds plus the warmup
+	 */
+	public void run(InetSocketAddress server, long duration) throws IOException{
+		DatagramChannel channel = DatagramChannel.open();
+		Selector selector = Selector.open();
+		try{
+			channel.configureBlocking(false);
+			//room for a full window of batches queued behind a busy peer
+			channel.setOption(StandardSocketOptions.SO_RCVBUF,SOCKET_BUFFER);
+			channel.setOption(StandardSocketOptions.SO_SNDBUF,SOCKET_BUFFER);
+			channel.connect(server);
+			channel.register(selector,SelectionKey.OP_READ);
+			long start = System.nanoTime();
+			long measure_from = start+WARMUP;
+			long end = measure_from+duration;
+			long now = start;
+			while(now<end){
+				while(free_count>0 && send(channel,now)){
+				}
+				selector.select(10);
+				selector.selectedKeys().clear();
+				now = System.nanoTime();
+				while(receive(channel,now,now>=measure_from)){
+				}
+				expire(now);
+			}
+			measured = now-measure_from;
+		}finally{
+			selector.close();
+			channel.close();
+		}
+	}
+
+	//Send the next batch of addresses in a free slot, false when the socket is full
+	private boolean send(DatagramChannel channel, long now) throws IOException{
+		int slot = free[free_count-1];
+		int id = (slot_uses[slot]%(Integer.MAX_VALUE/window))*window+slot;
+		request.clear();
+		request.putInt(id);
+		request.putShort((short)batch);
+		for(int i=0;i<batch;i++){
+			request.putInt(addr[(cursor+i)%n]);
+		}
+		request.flip();
+		if(channel.write(request)==0){
+			return false;
+		}
+		free_count--;
+		slot_uses[slot]++;
+		slot_id[slot]=id;
+		slot_sent[slot]=now;
+		slot_start[slot]=cursor;
+		cursor=(cursor+batch)%n;
+		sent++;
+		return true;
+	}
+
+	//Take one reply, false when none is waiting
+	private boolean receive(DatagramChannel channel, long now, boolean measure) throws IOException{
+		reply.clear();
+		if(channel.read(reply)<=0){
+			return false;
+		}
+		reply.flip();
+		if(reply.remaining()<lookup_server.HEADER){
+			return true;
+		}
+		int id = reply.getInt();
+		int count = reply.getShort() & 0xffff;
+		int slot = id%window;
+		if(slot<0 || slot_id[slot]!=id || count!=batch || reply.remaining()!=4*count){
+			//answer to a request already counted as lost
+			late++;
+			return true;
+		}
+		if(result!=null){
+			int start = slot_start[slot];
+			for(int i=0;i<count;i++){
+				int k = (start+i)%n;
+				result[k]=reply.getInt();
+				answered[k]=true;
+			}
+		}
+		if(measure){
+			if(recorded==latency.length){
+				latency = Arrays.copyOf(latency,latency.length*2);
+			}
+			latency[(int)recorded++]=now-slot_sent[slot];
+			measured_lookups+=count;
+		}
+		release(slot);
+		received++;
+		return true;
+	}
+
+	//Count requests older than TIMEOUT as lost and reuse their slots
+	private void expire(long now){
+		for(int slot=0;slot<window;slot++){
+			if(slot_id[slot]>=0 && now-slot_sent[slot]>TIMEOUT){
+				release(slot);
+				lost++;
+			}
+		}
+	}
+
+	private void release(int slot){
+		slot_id[slot]=-1;
+		free[free_count++]=slot;
+	}
+
+	//Latency at percentile p of the recorded round trips, in microseconds
+	private static double percentile(long sorted[], int count, double p){
+		int k = (int)Math.ceil(p/100*count)-1;
+		return sorted[Math.max(0,Math.min(count-1,k))]/1000.0;
+	}
+
+	/*
+	 * Display throughput over the measured interval and latency percentiles
+	 */
+	public void print_stats(){
+		System.out.println("Requests :: sent "+sent+" answered "+received+" lost "+lost+" late "+late
+				+" (batch "+batch+", window "+window+")");
+		if(recorded==0 || measured<=0){
+			System.out.println("No replies after warmup");
+			return;
+		}
+		int count = (int)recorded;
+		long sorted[] = Arrays.copyOf(latency,count);
+		Arrays.sort(sorted);
+		System.out.println(String.format("Throughput :: %.0f requests/s %.0f lookups/s (%.2f Mlookups/s)",
+				recorded*1e9/measured,measured_lookups*1e9/measured,measured_lookups*1e3/measured));
+		System.out.println(String.format("Latency(us) :: p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f",
+				percentile(sorted,count,50),percentile(sorted,count,90),percentile(sorted,count,99),
+				percentile(sorted,count,99.9),sorted[count-1]/1000.0));
+	}
+
+	/*
+	 * Write the next hop of every answered address, as Iplookup does
+	 */
+	public void write(String outfile) throws IOException{
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outfile),"UTF-8"),1<<20);
+		int missing=0;
+		try{
+			for(int i=0;i<n;i++){
+				if(!answered[i]){
+					missing++;
+					continue;
+				}
+				bw.write("IP :: ");
+				Iplookup.write_addr(bw,addr[i]);
+				bw.write(" Nexthop :: ");
+				Iplookup.write_addr(bw,result[i]);
+				bw.newLine();
+			}
+		}finally{
+			bw.close();
+		}
+		System.out.println("Output :: "+outfile+(missing>0 ? " ("+missing+" addresses never answered)" : ""));
+	}
+}
@@ -0,0 +1,185 @@
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Lookup Pipeline
+ * Reader, lookup and writer stages on their own threads, joined by bounded
+ * queues, so parsing the mapped test file, looking up and writing the output
+ * overlap and the wall time is set by the slowest stage.
+ * A fixed set of batches circulates reader -> lookup -> writer -> reader, which
+ * bounds memory to DEPTH batches and allocates nothing per address.
+ * Output is text("IP :: a Nexthop :: b", as the other approaches) or csv.
+ */
+class lookup_pipeline{
+	static final int BATCH = 1<<14;
+	static final int DEPTH = 8;
+
+	/*
+	 * Addresses of one chunk and their next hop ids
+	 * count -1 marks the end of the input
+	 */
+	static class batch{
+		int addr[] = new int[BATCH];
+		int hop[] = new int[BATCH];
+		int count;
+	}
+
+	private lpm_engine engine;
+	private next_hop_table next_hops;
+	private ArrayBlockingQueue<batch> free = new ArrayBlockingQueue<batch>(DEPTH);
+	private ArrayBlockingQueue<batch> parsed = new ArrayBlockingQueue<batch>(DEPTH);
+	private ArrayBlockingQueue<batch> looked_up = new ArrayBlockingQueue<batch>(DEPTH);
+	private AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+	//busy nanoseconds of reader, lookup and writer, not counting queue waits
+	public long busy[] = new long[3];
+	public long lookups=0;
+	public long matched=0;
+
+	lookup_pipeline(lpm_engine engine){
+		this.engine=engine;
+		this.next_hops=engine.next_hops();
+		for(int i=0;i<DEPTH;i++){
+			free.add(new batch());
+		}
+	}
+
+	/*
+	 * Look up every address of testfile and write the results to outfile
+	 * Returns when all three stages are done, rethrowing the first failure
+	 */
+	public void run(final String testfile, final String outfile, final boolean csv) throws IOException{
+		final Thread stages[] = new Thread[3];
+		stages[0] = new Thread("pipeline-reader"){
+			public void run(){
+				try{
+					mapped_loader.read_addresses(testfile,BATCH,new mapped_loader.address_handler(){
+						//end of the last queue wait, parsing runs from here to the next call
+						long resumed = System.nanoTime();
+						public void addresses(int addr[], int count){
+							try{
+								busy[0]+=System.nanoTime()-resumed;
+								batch b = free.take();
+								long st = System.nanoTime();
+								System.arraycopy(addr,0,b.addr,0,count);
+								b.count=count;
+								busy[0]+=System.nanoTime()-st;
+								parsed.put(b);
+								resumed = System.nanoTime();
+							}catch(InterruptedException e){
+								throw new IllegalStateException(e);
+							}
+						}
+					});
+					batch end = free.take();
+					end.count=-1;
+					parsed.put(end);
+				}catch(Throwable e){
+					fail(e,stages);
+				}
+			}
+		};
+		stages[1] = new Thread("pipeline-lookup"){
+			public void run(){
+				try{
+					while(true){
+						batch b = parsed.take();
+						if(b.count<0){
+							looked_up.put(b);
+							return;
+						}
+						long st = System.nanoTime();
+						int hits = engine.lookup(b.addr,b.hop,b.count);
+						busy[1]+=System.nanoTime()-st;
+						lookups+=b.count;
+						matched+=hits;
+						looked_up.put(b);
+					}
+				}catch(Throwable e){
+					fail(e,stages);
+				}
+			}
+		};
+		stages[2] = new Thread("pipeline-writer"){
+			public void run(){
+				try{
+					write(outfile,csv);
+				}catch(Throwable e){
+					fail(e,stages);
+				}
+			}
+		};
+		for(Thread t: stages){
+			t.start();
+		}
+		for(Thread t: stages){
+			try{
+				t.join();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for pipeline");
+			}
+		}
+		Throwable e = error.get();
+		if(e instanceof IOException){
+			throw (IOException)e;
+		}else if(e!=null){
+			throw new IOException("Pipeline stage failed",e);
+		}
+	}
+
+	//Writer stage, owns the output file
+	private void write(String outfile, boolean csv) throws IOException, InterruptedException{
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outfile),"UTF-8"),1<<20);
+		try{
+			if(csv){
+				bw.write("ip,next_hop");
+				bw.newLine();
+			}
+			while(true){
+				batch b = looked_up.take();
+				if(b.count<0){
+					break;
+				}
+				long st = System.nanoTime();
+				for(int i=0;i<b.count;i++){
+					if(!csv){
+						bw.write("IP :: ");
+					}
+					Iplookup.write_addr(bw,b.addr[i]);
+					bw.write(csv ? "," : " Nexthop :: ");
+					bw.write(next_hops.get(b.hop[i]));
+					bw.newLine();
+				}
+				busy[2]+=System.nanoTime()-st;
+				free.put(b);
+			}
+		}finally{
+			long st = System.nanoTime();
+			bw.close();
+			busy[2]+=System.nanoTime()-st;
+		}
+	}
+
+	//Keep the first failure and stop the other stages, which may be blocked on a queue
+	private void fail(Throwable e, Thread stages[]){
+		if(error.compareAndSet(null,e)){
+			for(Thread t: stages){
+				if(t!=Thread.currentThread()){
+					t.interrupt();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Display busy time of every stage, the largest one bounds the wall time
+	 */
+	public void print_stats(){
+		String name[] = {"reader","lookup","writer"};
+		for(int i=0;i<3;i++){
+			System.out.println("Stage "+name[i]+" :: busy "+busy[i]/1000000+"ms");
+		}
+	}
+}
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/*
+ * Lookup Server
+ * Serves batched longest prefix match requests over UDP from one thread with
+ * a non-blocking DatagramChannel on a Selector. Every datagram carries a batch
+ * of addresses, looked up together with the engine's batch lookup, and the
+ * reply is built in a reused direct buffer, so serving allocates nothing.
+ * Wire format, network byte order:
+ *  request - int id, unsigned short count, count x 4 byte IPv4 address
+ *  reply   - int id, unsigned short count, count x 4 byte next hop address
+ *            (255.255.255.255 when no prefix matched)
+ * Datagrams of the wrong size are dropped, as are replies the socket buffer
+ * cannot take; the client sees them as lost.
+ * To run the program:
+ * java lookup_server <routes> [port, default 5300] [engine or auto, default auto] [budget MB, default 64]
+ */
+class lookup_server{
+	static final int DEFAULT_PORT = 5300;
+	static final int HEADER = 6;
+	//addresses per datagram, a full request or reply is about 4KB
+	static final int MAX_BATCH = 1024;
+	static final long STATS_INTERVAL = 5000;
+	static final int SOCKET_BUFFER = 1<<22;
+
+	private lpm_engine engine;
+	private DatagramChannel channel;
+	private Selector selector;
+	private volatile boolean running=true;
+	private ByteBuffer request = ByteBuffer.allocateDirect(HEADER+4*MAX_BATCH+1);
+	private ByteBuffer reply = ByteBuffer.allocateDirect(HEADER+4*MAX_BATCH);
+	private int addr[] = new int[MAX_BATCH];
+	private int result[] = new int[MAX_BATCH];
+	//next hop id -> next hop address, extended when the table grows
+	private int hop_addr[] = new int[0];
+
+	public long requests=0;
+	public long lookups=0;
+	public long malformed=0;
+	public long dropped=0;
+
+	lookup_server(lpm_engine engine, int port) throws IOException{
+		this.engine=engine;
+		channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		//room for a full window of batches queued behind a busy peer
+		channel.setOption(StandardSocketOptions.SO_RCVBUF,SOCKET_BUFFER);
+		channel.setOption(StandardSocketOptions.SO_SNDBUF,SOCKET_BUFFER);
+		channel.bind(new InetSocketAddress(port));
+		selector = Selector.open();
+		channel.register(selector,SelectionKey.OP_READ);
+	}
+
+	public int port() throws IOException{
+		return ((InetSocketAddress)channel.getLocalAddress()).getPort();
+	}
+
+	//Next hop address of the id, as sent in replies
+	private int hop_addr(int id){
+		if(id>=hop_addr.length){
+			next_hop_table next_hops = engine.next_hops();
+			int grown[] = new int[next_hops.size()];
+			for(int i=0;i<grown.length;i++){
+				grown[i]=Iplookup.parse_addr(next_hops.get(i));
+			}
+			hop_addr=grown;
+		}
+		return hop_addr[id];
+	}
+
+	/*
+	 * Serve until close(), printing request rates every STATS_INTERVAL while busy
+	 */
+	public void serve() throws IOException{
+		try{
+			loop();
+		}finally{
+			selector.close();
+			channel.close();
+		}
+	}
+
+	private void loop() throws IOException{
+		long last_time = System.currentTimeMillis();
+		long last_requests=0, last_lookups=0;
+		while(running){
+			selector.select(STATS_INTERVAL);
+			selector.selectedKeys().clear();
+			//drain everything queued, select again only when the socket is empty
+			while(running && receive()){
+			}
+			long now = System.currentTimeMillis();
+			if(now-last_time>=STATS_INTERVAL){
+				if(requests>last_requests){
+					System.out.println("Served :: "+(requests-last_requests)*1000/(now-last_time)+" requests/s "
+							+(lookups-last_lookups)*1000/(now-last_time)+" lookups/s (malformed "+malformed+" dropped "+dropped+")");
+				}
+				last_time=now;
+				last_requests=requests;
+				last_lookups=lookups;
+			}
+		}
+	}
+
+	//Answer one datagram, false when none is waiting
+	private boolean receive() throws IOException{
+		request.clear();
+		SocketAddress client = channel.receive(request);
+		if(client==null){
+			return false;
+		}
+		request.flip();
+		if(request.remaining()<HEADER){
+			malformed++;
+			return true;
+		}
+		int id = request.getInt();
+		int count = request.getShort() & 0xffff;
+		if(count>MAX_BATCH || request.remaining()!=4*count){
+			malformed++;
+			return true;
+		}
+		for(int i=0;i<count;i++){
+			addr[i]=request.getInt();
+		}
+		engine.lookup(addr,result,count);
+		reply.clear();
+		reply.putInt(id);
+		reply.putShort((short)count);
+		for(int i=0;i<count;i++){
+			reply.putInt(hop_addr(result[i]));
+		}
+		reply.flip();
+		if(channel.send(reply,client)==0){
+			dropped++;
+		}
+		requests++;
+		lookups+=count;
+		return true;
+	}
+
+	/*
+	 * Stop serve(), which then releases the socket, callable from any thread
+	 */
+	public void close(){
+		running=false;
+		selector.wakeup();
+	}
+
+	public static void main(String args[]) throws IOException{
+		if(args.length<1){
+			System.out.println("java lookup_server <routes> [port] [engine or auto] [budget MB]");
+			return;
+		}
+		int port = args.length>1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+		String name = args.length>2 ? args[2] : "auto";
+		long budget = (args.length>3 ? Long.parseLong(args[3]) : 64)<<20;
+		final engine_selector routes = new engine_selector();
+		long startTime = System.currentTimeMillis();
+		mapped_loader.read_routes(args[0],new mapped_loader.route_handler(){
+			public void route(int prefix, int CIDR, String next_hop){
+				routes.add(prefix,CIDR,next_hop);
+			}
+		});
+		lpm_engine engine = name.equals("auto") ? routes.select(null,budget) : routes.build(name);
+		System.out.println("Routes loaded :: "+routes.size()+" into "+engine.name()+" in "+(System.currentTimeMillis()-startTime)+"ms");
+		final lookup_server server = new lookup_server(engine,port);
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			public void run(){
+				server.close();
+				System.out.println("Served :: "+server.requests+" requests "+server.lookups+" lookups (malformed "
+						+server.malformed+" dropped "+server.dropped+")");
+			}
+		});
+		System.out.println("Listening on udp port "+server.port());
+		server.serve();
+	}
+}
@@ -0,0 +1,186 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.*;
+
+/*
+ * Lookup Stats
+ * Counters of one lookup engine, exposed as the MBean
+ * Iplookup:type=lookup_stats,engine=<name>.
+ * record() is called on every lookup from any number of threads; the counters
+ * are LongAdders, striped per thread under contention, so the hot path costs
+ * a few uncontended adds. Sums are only formed when an attribute is read.
+ * Only the Trie reports depths, other engines leave the histogram empty.
+ * Node count and footprint are computed on read by the given suppliers,
+ * nodes is null for engines that do not count nodes.
+ */
+public class lookup_stats implements lookup_statsMBean{
+	static final int DEPTHS = 33;
+	static final long RATE_INTERVAL = 1000000000L;
+
+	private String engine;
+	private LongAdder lookups = new LongAdder();
+	//lookups by depth, for the engines that report one
+	private LongAdder depth[] = new LongAdder[DEPTHS];
+	private LongAdder misses = new LongAdder();
+	private LongSupplier nodes;
+	private LongSupplier bytes;
+	private ObjectName name;
+	//last rate sample: time, lookups and rate over the interval before it
+	private long sample_time = System.nanoTime();
+	private long sample_lookups=0;
+	private double rate=0;
+
+	lookup_stats(String engine, LongSupplier nodes, LongSupplier bytes){
+		this.engine=engine;
+		this.nodes=nodes;
+		this.bytes=bytes;
+		for(int i=0;i<DEPTHS;i++){
+			depth[i]=new LongAdder();
+		}
+	}
+
+	/*
+	 * Count one lookup that visited depth nodes below the root
+	 */
+	public void record(int depth, boolean miss){
+		this.depth[depth].increment();
+		record(miss);
+	}
+
+	/*
+	 * Count one lookup of an engine without depths
+	 */
+	public void record(boolean miss){
+		lookups.increment();
+		if(miss){
+			misses.increment();
+		}
+	}
+
+	/*
+	 * Count a batch of count lookups of which misses matched no prefix
+	 */
+	public void record(int count, int misses){
+		lookups.add(count);
+		this.misses.add(misses);
+	}
+
+	/*
+	 * Register with the platform MBean server, replacing an earlier bean of the same engine
+	 */
+	public void register(){
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			name = new ObjectName("Iplookup:type=lookup_stats,engine="+ObjectName.quote(engine));
+			if(server.isRegistered(name)){
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this,name);
+		}catch(JMException e){
+			throw new IllegalStateException("Cannot register lookup stats of "+engine,e);
+		}
+	}
+
+	public void unregister(){
+		if(name==null){
+			return;
+		}
+		try{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}catch(JMException e){
+			//already gone
+		}
+		name=null;
+	}
+
+	public String getEngine(){
+		return engine;
+	}
+
+	public long getLookups(){
+		return lookups.sum();
+	}
+
+	public long getDefaultRouteMisses(){
+		return misses.sum();
+	}
+
+	public long[] getDepthHistogram(){
+		long histogram[] = new long[DEPTHS];
+		for(int i=0;i<DEPTHS;i++){
+			histogram[i]=depth[i].sum();
+		}
+		return histogram;
+	}
+
+	public double getAverageDepth(){
+		long lookups=0, total=0;
+		for(int i=0;i<DEPTHS;i++){
+			long n = depth[i].sum();
+			lookups+=n;
+			total+=n*i;
+		}
+		return lookups==0 ? 0 : (double)total/lookups;
+	}
+
+	public long getNodeCount(){
+		return nodes==null ? -1 : nodes.getAsLong();
+	}
+
+	public long getFootprintBytes(){
+		return bytes.getAsLong();
+	}
+
+	/*
+	 * The rate is resampled when the last sample is at least RATE_INTERVAL old,
+	 * so polling faster than once a second returns the previous rate
+	 */
+	public synchronized double getLookupsPerSecond(){
+		long now = System.nanoTime();
+		if(now-sample_time>=RATE_INTERVAL){
+			long lookups = getLookups();
+			rate = (lookups-sample_lookups)*1e9/(now-sample_time);
+			sample_time=now;
+			sample_lookups=lookups;
+		}
+		return rate;
+	}
+
+	public synchronized void reset(){
+		lookups.reset();
+		for(LongAdder d: depth){
+			d.reset();
+		}
+		misses.reset();
+		sample_time=System.nanoTime();
+		sample_lookups=0;
+		rate=0;
+	}
+
+	/*
+	 * Display counters and the non empty part of the depth histogram,
+	 * depth and nodes only for the engines that report them
+	 */
+	public void print_stats(){
+		long lookups = getLookups();
+		long histogram[] = getDepthHistogram();
+		long deep=0;
+		for(long n: histogram){
+			deep+=n;
+		}
+		System.out.println(engine+" stats :: lookups "+lookups+" default route misses "+getDefaultRouteMisses()
+				+(deep>0 ? " average depth "+String.format("%.2f",getAverageDepth()) : "")
+				+(nodes!=null ? " nodes "+getNodeCount() : "")+" memory "+getFootprintBytes()/1024+"KB");
+		if(deep==0){
+			return;
+		}
+		StringBuilder sb = new StringBuilder("Depth histogram ::");
+		for(int i=0;i<DEPTHS;i++){
+			if(histogram[i]>0){
+				sb.append(' ').append(i).append(':').append(histogram[i]*100/deep).append('%');
+			}
+		}
+		System.out.println(sb);
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * Management interface of lookup_stats
+ * Standard MBean: attribute names come from the getters
+ */
+public interface lookup_statsMBean{
+	String getEngine();
+
+	long getLookups();
+
+	//Lookups that matched no prefix and got the default next hop
+	long getDefaultRouteMisses();
+
+	//Lookups by number of nodes visited below the root, index 0..32, empty except for the Trie
+	long[] getDepthHistogram();
+
+	double getAverageDepth();
+
+	//-1 for engines that do not count nodes
+	long getNodeCount();
+
+	long getFootprintBytes();
+
+	//Lookups per second over the last sampling interval (at least one second)
+	double getLookupsPerSecond();
+
+	void reset();
+}
@@ -0,0 +1,41 @@
+/*
+ * LPM Engine
+ * Common interface of the IPv4 longest prefix match structures, so the lookup
+ * driver, the benchmark and engine_selector run any of them the same way.
+ * Routes are added by insert, then build() prepares the structure for lookups;
+ * engines that are complete after every insert do nothing in build().
+ * Next hops are ids of next_hops(), NO_ROUTE when no prefix matched.
+ */
+interface lpm_engine{
+	//Short name, as given to lookup_bench and engine_selector
+	String name();
+
+	void insert(int prefix, int CIDR, int next_hop);
+
+	void build();
+
+	int lookup(int addr);
+
+	/*
+	 * Look up the first count addresses and store their next hop ids at the same index
+	 * Returns the number of addresses that matched a prefix
+	 */
+	default int lookup(int addr[], int result[], int count){
+		int matched=0;
+		for(int i=0;i<count;i++){
+			result[i]=lookup(addr[i]);
+			if(result[i]!=next_hop_table.NO_ROUTE){
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	//Memory used by the lookup structure in bytes
+	long footprint();
+
+	//Structure counters and memory, printed after the timings
+	String describe();
+
+	next_hop_table next_hops();
+}
@@ -0,0 +1,243 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Mapped Loader
+ * Reads route files(prefix/CIDR) and test files(Ip addresses) through a memory
+ * mapped window that slides over the file, parsing tokens straight from the
+ * mapped bytes. Test addresses are handed out in fixed size int chunks (long
+ * pairs for IPv6), so the whole test set never has to be in memory.
+ */
+class mapped_loader{
+	//bytes of the file mapped at a time
+	static final int WINDOW = 64<<20;
+
+	interface route_handler{
+		void route(int prefix, int CIDR, String next_hop);
+	}
+
+	/*
+	 * Receives the next addr[0..count); the array is reused for the next chunk
+	 */
+	interface address_handler{
+		void addresses(int addr[], int count);
+	}
+
+	interface route6_handler{
+		void route(long high, long low, int CIDR, String next_hop);
+	}
+
+	/*
+	 * Receives the next count addresses as high/low pairs in addr[0..2*count)
+	 * The array is reused for the next chunk
+	 */
+	interface address6_handler{
+		void addresses(long addr[], int count);
+	}
+
+	/*
+	 * Read every prefix/CIDR token of the route file
+	 * next_hop is the address text before the '/', as used by the Trie
+	 * Returns number of routes read
+	 */
+	public static int read_routes(String path, route_handler handler) throws IOException{
+		tokens in = new tokens(path);
+		int count=0;
+		try{
+			while(in.next()){
+				int slash=in.slash(path);
+				int CIDR=in.cidr(slash,32,path);
+				int prefix = Iplookup.parse_addr(in.buf,in.start,slash);
+				handler.route(prefix,CIDR,in.text(in.start,slash));
+				count++;
+			}
+		}finally{
+			in.close();
+		}
+		return count;
+	}
+
+	/*
+	 * Read every prefix/CIDR token of an IPv6 route file, e.g. 2001:db8::/32
+	 * Returns number of routes read
+	 */
+	public static int read_routes6(String path, route6_handler handler) throws IOException{
+		tokens in = new tokens(path);
+		long prefix[] = new long[2];
+		int count=0;
+		try{
+			while(in.next()){
+				int slash=in.slash(path);
+				int CIDR=in.cidr(slash,128,path);
+				ipv6_trie.parse_addr6(in.buf,in.start,slash,prefix,0);
+				handler.route(prefix[0],prefix[1],CIDR,in.text(in.start,slash));
+				count++;
+			}
+		}finally{
+			in.close();
+		}
+		return count;
+	}
+
+	/*
+	 * Stream the addresses of the test file in chunks of up to chunk addresses
+	 * Returns number of addresses read
+	 */
+	public static long read_addresses(String path, int chunk, address_handler handler) throws IOException{
+		tokens in = new tokens(path);
+		int addr[] = new int[chunk];
+		int count=0;
+		long total=0;
+		try{
+			while(in.next()){
+				addr[count++] = Iplookup.parse_addr(in.buf,in.start,in.end);
+				if(count==chunk){
+					handler.addresses(addr,count);
+					total+=count;
+					count=0;
+				}
+			}
+			if(count>0){
+				handler.addresses(addr,count);
+				total+=count;
+			}
+		}finally{
+			in.close();
+		}
+		return total;
+	}
+
+	/*
+	 * Stream the addresses of an IPv6 test file in chunks of up to chunk addresses
+	 * Returns number of addresses read
+	 */
+	public static long read_addresses6(String path, int chunk, address6_handler handler) throws IOException{
+		tokens in = new tokens(path);
+		long addr[] = new long[2*chunk];
+		int count=0;
+		long total=0;
+		try{
+			while(in.next()){
+				ipv6_trie.parse_addr6(in.buf,in.start,in.end,addr,2*count++);
+				if(count==chunk){
+					handler.addresses(addr,count);
+					total+=count;
+					count=0;
+				}
+			}
+			if(count>0){
+				handler.addresses(addr,count);
+				total+=count;
+			}
+		}finally{
+			in.close();
+		}
+		return total;
+	}
+
+	/*
+	 * Whitespace separated tokens of a file
+	 * After next() returns true the token is buf[start..end)
+	 */
+	private static class tokens{
+		FileChannel channel;
+		long size;
+		//file offset of buf
+		long base=0;
+		MappedByteBuffer buf;
+		int pos=0;
+		int start;
+		int end;
+
+		tokens(String path) throws IOException{
+			channel = FileChannel.open(Paths.get(path),StandardOpenOption.READ);
+			size = channel.size();
+			map(0);
+		}
+
+		private void map(long from) throws IOException{
+			base=from;
+			buf=channel.map(FileChannel.MapMode.READ_ONLY,from,Math.min(WINDOW,size-from));
+			pos=0;
+		}
+
+		private static boolean is_space(byte c){
+			return c==' ' || c=='\n' || c=='\r' || c=='\t';
+		}
+
+		boolean next() throws IOException{
+			while(true){
+				int limit=buf.limit();
+				while(pos<limit && is_space(buf.get(pos))){
+					pos++;
+				}
+				if(pos==limit){
+					if(base+limit>=size){
+						return false;
+					}
+					map(base+limit);
+					continue;
+				}
+				int token=pos;
+				while(pos<limit && !is_space(buf.get(pos))){
+					pos++;
+				}
+				if(pos==limit && base+limit<size){
+					//token continues past the window, map again from its start
+					if(token==0){
+						throw new IOException("Token longer than mapped window");
+					}
+					map(base+token);
+					continue;
+				}
+				start=token;
+				end=pos;
+				return true;
+			}
+		}
+
+		//Index of the '/' of a prefix/CIDR token
+		int slash(String path) throws IOException{
+			int slash=start;
+			while(slash<end && buf.get(slash)!='/'){
+				slash++;
+			}
+			if(slash+1>=end){
+				throw new IOException("Invalid route at byte "+(base+start)+" of "+path);
+			}
+			return slash;
+		}
+
+		//CIDR after the '/', at most max
+		int cidr(int slash, int max, String path) throws IOException{
+			int CIDR=0;
+			for(int i=slash+1;i<end;i++){
+				int digit = buf.get(i)-'0';
+				if(digit<0 || digit>9 || CIDR>max){
+					throw new IOException("Invalid CIDR at byte "+(base+i)+" of "+path);
+				}
+				CIDR = CIDR*10+digit;
+			}
+			if(CIDR>max){
+				throw new IOException("Invalid CIDR at byte "+(base+slash)+" of "+path);
+			}
+			return CIDR;
+		}
+
+		//Token bytes buf[from..to) as a String
+		String text(int from, int to) throws IOException{
+			byte text[] = new byte[to-from];
+			for(int i=0;i<text.length;i++){
+				text[i]=buf.get(from+i);
+			}
+			return new String(text,"US-ASCII");
+		}
+
+		void close() throws IOException{
+			channel.close();
+		}
+	}
+}
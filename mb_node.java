@@ -0,0 +1,20 @@
+import java.util.Arrays;
+
+/*
+ * Multibit Trie Node
+ * One slot per stride value: next hop id(-1 when no prefix owns the slot),
+ * length of the prefix that owns the slot and child node for the next level
+ */
+class mb_node{
+	int next_hop[];
+	byte length[];
+	mb_node child[];
+
+	mb_node(int stride, boolean leaf){
+		this.next_hop = new int[1<<stride];
+		Arrays.fill(this.next_hop,-1);
+		this.length = new byte[1<<stride];
+		//last level never has children
+		this.child = leaf ? null : new mb_node[1<<stride];
+	}
+}
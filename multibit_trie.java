@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/*
+ * Multibit Trie
+ * Stores network prefixes in a trie that consumes several bits per level (stride).
+ * Prefixes that do not end on a stride boundary are expanded into all the
+ * longer prefixes that end on the next boundary (controlled prefix expansion),
+ * so a lookup takes one array read per level, i.e. 2-4 memory accesses for
+ * strides like 16-8-8 or 8-8-8-8.
+ */
+
+class multibit_trie implements lpm_engine{
+	public mb_node root;
+	public next_hop_table next_hops;
+	public int strides[];
+	//bit offset of each level inside the 32 bit address
+	private int offset[];
+	public int node_count=0;
+	//bytes of the slot arrays of all nodes
+	private long bytes=0;
+
+	multibit_trie(int strides[]){
+		this(strides,Iplookup.next_hops);
+	}
+
+	multibit_trie(int strides[], next_hop_table next_hops){
+		this.next_hops=next_hops;
+		int sum=0;
+		for(int i=0;i<strides.length;i++){
+			if(strides[i]<=0 || strides[i]>24){
+				throw new IllegalArgumentException("Invalid stride :: "+strides[i]);
+			}
+			sum+=strides[i];
+		}
+		if(sum!=32){
+			throw new IllegalArgumentException("Strides must add up to 32 bits, got "+sum);
+		}
+		this.strides=strides;
+		this.offset=new int[strides.length];
+		for(int i=1;i<strides.length;i++){
+			offset[i]=offset[i-1]+strides[i-1];
+		}
+		this.root=new mb_node(strides[0],strides.length==1);
+		node_count=1;
+		bytes=node_bytes(0);
+	}
+
+	/*
+	 * Parse stride string like "16-8-8" or "8-8-8-8"
+	 */
+	public static int[] parse_strides(String spec){
+		String buffer[] = spec.split("-");
+		int strides[] = new int[buffer.length];
+		for(int i=0;i<buffer.length;i++){
+			strides[i]=Integer.parseInt(buffer[i]);
+		}
+		return strides;
+	}
+
+	/*
+	 * Insert network prefix of CIDR length
+	 * Prefix is expanded to the end of the level it falls in; a slot already owned
+	 * by a longer prefix is left untouched
+	 */
+	public void insert(int prefix, int CIDR, String next_hop){
+		insert(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		mb_node temp=root;
+		int level=0;
+		//walk down the levels that are fully covered by the prefix
+		while(CIDR>offset[level]+strides[level]){
+			int index = slot(prefix,level);
+			if(temp.child[index]==null){
+				temp.child[index]=new mb_node(strides[level+1],level+2==strides.length);
+				node_count++;
+				bytes+=node_bytes(level+1);
+			}
+			temp=temp.child[index];
+			level++;
+		}
+		//expand remaining bits of the prefix inside this level
+		int free_bits = offset[level]+strides[level]-CIDR;
+		int first = slot(prefix,level) & ~((1<<free_bits)-1);
+		int last = first+(1<<free_bits);
+		for(int i=first;i<last;i++){
+			if(temp.length[i]<=CIDR){
+				temp.next_hop[i]=next_hop;
+				temp.length[i]=(byte)CIDR;
+			}
+		}
+	}
+
+	//Slot arrays of a node of the level: next hop, length and, above the last level, child
+	private long node_bytes(int level){
+		return (long)(1<<strides[level])*(level+1==strides.length ? 5 : 9);
+	}
+
+	//Index of the slot for the address in the given level
+	private int slot(int addr, int level){
+		return (addr >>> (32-offset[level]-strides[level])) & ((1<<strides[level])-1);
+	}
+
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(int addr){
+		mb_node temp=root;
+		int next_hop=next_hop_table.NO_ROUTE;
+		for(int level=0;temp!=null;level++){
+			int index = slot(addr,level);
+			if(temp.next_hop[index]>=0){
+				next_hop=temp.next_hop[index];
+			}
+			temp = temp.child==null ? null : temp.child[index];
+		}
+		return next_hop;
+	}
+
+	//Memory used by the slot arrays in bytes, child references counted as 4 bytes
+	public long footprint(){
+		return bytes;
+	}
+
+	public String describe(){
+		return "Strides :: "+Arrays.toString(strides)+" nodes :: "+node_count+" memory :: "+footprint()/1024+"KB";
+	}
+
+	public String name(){
+		return "multibit";
+	}
+
+	//prefixes are expanded by insert
+	public void build(){
+	}
+
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+}
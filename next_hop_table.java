@@ -0,0 +1,56 @@
+import java.util.*;
+
+/*
+ * Next Hop Table
+ * Interns next hop Strings so lookup structures store a small int id per
+ * prefix instead of a String. Id 0 is the default next hop 255.255.255.255,
+ * returned when no prefix matches; an id is never reused or removed.
+ * intern() is synchronized for builders and live updates, get() takes no lock.
+ */
+class next_hop_table{
+	public static final int NO_ROUTE = 0;
+	public static final String DEFAULT_HOP = "255.255.255.255";
+
+	private volatile String hops[] = new String[64];
+	private int count=1;
+	private HashMap<String,Integer> ids = new HashMap<String,Integer>();
+
+	next_hop_table(){
+		//not put in ids, a route whose next hop reads 255.255.255.255 still gets its own id
+		hops[NO_ROUTE]=DEFAULT_HOP;
+	}
+
+	/*
+	 * Id of the next hop, a new id is assigned on first use
+	 */
+	public synchronized int intern(String next_hop){
+		Integer id = ids.get(next_hop);
+		if(id==null){
+			id = count;
+			String grown[] = hops;
+			if(count==grown.length){
+				grown = Arrays.copyOf(grown,grown.length*2);
+			}
+			grown[count++]=next_hop;
+			//published after the slot is filled
+			hops=grown;
+			ids.put(next_hop,id);
+		}
+		return id;
+	}
+
+	//Next hop of the id, DEFAULT_HOP for NO_ROUTE
+	public String get(int id){
+		return hops[id];
+	}
+
+	//Number of ids in use, including NO_ROUTE
+	public synchronized int size(){
+		return count;
+	}
+
+	//Estimated memory of the table in bytes, 40 bytes per String and 48 per map entry
+	public synchronized long footprint(){
+		return 4L*hops.length+88L*count;
+	}
+}
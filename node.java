@@ -0,0 +1,22 @@
+/*
+ * Trie Tree Node
+ * Represents tree structure and values
+ */
+class node{
+	node left;
+	node right;
+	String val;
+	boolean ind;
+	//id in the trie's next_hop_table
+	int next_hop;
+	
+	node(node left, node right,String val, boolean ind,int next_hop){
+		this.left=left;
+		this.right=right;
+		this.ind=ind;
+		this.val=val;
+		this.next_hop =next_hop;
+		
+	}
+	
+}
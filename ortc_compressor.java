@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+/*
+ * ORTC Compressor
+ * Optimal Routing Table Constructor (Draves et al.): turns a route set into the
+ * smallest prefix set that forwards every address to the same next hop.
+ * Routes are added with next hop ids; a later duplicate prefix replaces an
+ * earlier one, as trie.insert does. Three passes over a binary trie:
+ *  1. top down, push every next hop to the leaves and give every internal node
+ *     two children, so each leaf holds the hop its addresses use
+ *  2. bottom up, a node's candidate set is the intersection of its children's
+ *     sets, or their union when they share nothing
+ *  3. top down, a node keeps a prefix only when the hop inherited from above is
+ *     not in its set, taking any hop of the set
+ * Addresses without route are treated as next hop NO_ROUTE, so the result may
+ * contain NO_ROUTE prefixes that cut holes into a covering prefix; lookup
+ * structures must keep those apart from "no prefix here".
+ */
+class ortc_compressor{
+	public int input_count=0;
+	//compressed routes, filled by compress()
+	public int prefix[];
+	public int length[];
+	public int next_hop[];
+	public int output_count=0;
+
+	private int left[];
+	private int right[];
+	//next hop id of the prefix ending at the node, -1 for none
+	private int hop[];
+	private int sets[][];
+	private int node_count=1;
+
+	ortc_compressor(){
+		left = new int[1024];
+		right = new int[1024];
+		hop = new int[1024];
+		hop[0]=-1;
+	}
+
+	/*
+	 * Add route prefix/CIDR with next hop id
+	 */
+	public void add(int prefix, int CIDR, int next_hop){
+		if(sets!=null){
+			throw new IllegalStateException("Routes already compressed");
+		}
+		int temp=0;
+		for(int i=0;i<CIDR;i++){
+			//new_node() may replace the arrays, so call it before indexing them
+			if(((prefix>>>(31-i)) & 1)==1){
+				if(right[temp]==0){
+					int child=new_node();
+					right[temp]=child;
+				}
+				temp=right[temp];
+			}else{
+				if(left[temp]==0){
+					int child=new_node();
+					left[temp]=child;
+				}
+				temp=left[temp];
+			}
+		}
+		hop[temp]=next_hop;
+		input_count++;
+	}
+
+	private int new_node(){
+		if(node_count==left.length){
+			int capacity = left.length*2;
+			left = Arrays.copyOf(left,capacity);
+			right = Arrays.copyOf(right,capacity);
+			hop = Arrays.copyOf(hop,capacity);
+		}
+		hop[node_count]=-1;
+		return node_count++;
+	}
+
+	/*
+	 * Run the three passes and fill prefix, length and next_hop
+	 * Returns number of compressed routes
+	 */
+	public int compress(){
+		normalize(0,next_hop_table.NO_ROUTE);
+		sets = new int[node_count][];
+		candidates(0);
+		prefix = new int[node_count];
+		length = new int[node_count];
+		next_hop = new int[node_count];
+		assign(0,0,0,next_hop_table.NO_ROUTE);
+		prefix = Arrays.copyOf(prefix,output_count);
+		length = Arrays.copyOf(length,output_count);
+		next_hop = Arrays.copyOf(next_hop,output_count);
+		//trie is no longer needed
+		left=null;
+		right=null;
+		hop=null;
+		sets=null;
+		return output_count;
+	}
+
+	//Pass 1: leaves get the inherited hop, missing siblings are added as leaves
+	private void normalize(int n, int inherited){
+		if(hop[n]>=0){
+			inherited=hop[n];
+		}
+		if(left[n]==0 && right[n]==0){
+			hop[n]=inherited;
+			return;
+		}
+		hop[n]=-1;
+		if(left[n]==0){
+			int child=new_node();
+			left[n]=child;
+		}
+		if(right[n]==0){
+			int child=new_node();
+			right[n]=child;
+		}
+		normalize(left[n],inherited);
+		normalize(right[n],inherited);
+	}
+
+	//Pass 2: candidate next hops of every node, as sorted arrays
+	private void candidates(int n){
+		if(left[n]==0){
+			sets[n] = new int[]{hop[n]};
+			return;
+		}
+		candidates(left[n]);
+		candidates(right[n]);
+		int a[] = sets[left[n]];
+		int b[] = sets[right[n]];
+		int common[] = intersect(a,b);
+		sets[n] = common.length>0 ? common : union(a,b);
+	}
+
+	//Pass 3: keep a prefix where the inherited hop is not a candidate
+	private void assign(int n, int bits, int depth, int inherited){
+		if(Arrays.binarySearch(sets[n],inherited)<0){
+			inherited = sets[n][0];
+			prefix[output_count]=bits;
+			length[output_count]=depth;
+			next_hop[output_count]=inherited;
+			output_count++;
+		}
+		if(left[n]!=0){
+			assign(left[n],bits,depth+1,inherited);
+			assign(right[n],bits | (1<<(31-depth)),depth+1,inherited);
+		}
+	}
+
+	private static int[] intersect(int a[], int b[]){
+		int out[] = new int[Math.min(a.length,b.length)];
+		int i=0, j=0, k=0;
+		while(i<a.length && j<b.length){
+			if(a[i]<b[j]){
+				i++;
+			}else if(a[i]>b[j]){
+				j++;
+			}else{
+				out[k++]=a[i];
+				i++;
+				j++;
+			}
+		}
+		return k==out.length ? out : Arrays.copyOf(out,k);
+	}
+
+	private static int[] union(int a[], int b[]){
+		int out[] = new int[a.length+b.length];
+		int i=0, j=0, k=0;
+		while(i<a.length || j<b.length){
+			if(j==b.length || (i<a.length && a[i]<b[j])){
+				out[k++]=a[i++];
+			}else if(i==a.length || a[i]>b[j]){
+				out[k++]=b[j++];
+			}else{
+				out[k++]=a[i];
+				i++;
+				j++;
+			}
+		}
+		return k==out.length ? out : Arrays.copyOf(out,k);
+	}
+}
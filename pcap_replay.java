@@ -0,0 +1,282 @@
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Pcap Replay
+ * Replays the IPv4 destination addresses of a pcap capture through a lookup
+ * engine. The capture is memory mapped in windows like mapped_loader does and
+ * destinations are read straight from the mapped packet bytes into an int
+ * batch, no packet is copied. Every batch goes to the engine's batch lookup.
+ * The first pass over the file warms up the JIT (and writes the output file
+ * when given), later passes are measured: sustained Mpps including parsing,
+ * Mpps of the lookups alone and percentiles of the batch lookup latency.
+ * Link types: Ethernet (with 802.1Q/802.1ad VLAN tags), raw IP, Linux cooked
+ * capture v1 and v2. Packets that are not IPv4 or are cut before the
+ * destination address are counted as skipped. pcapng files are not read.
+ * To run the program:
+ * java pcap_replay <routes> <pcap file> [engine or auto, default trie] [batch, default 256]
+ *                  [passes, default 5] [output file]
+ */
+class pcap_replay{
+	static final int MAGIC_MICROS = 0xa1b2c3d4;
+	static final int MAGIC_NANOS = 0xa1b23c4d;
+	static final int FILE_HEADER = 24;
+	static final int RECORD_HEADER = 16;
+	static final int LINKTYPE_ETHERNET = 1;
+	static final int LINKTYPE_RAW = 101;
+	//DLT_RAW values some platforms write instead of LINKTYPE_RAW
+	static final int DLT_RAW_12 = 12;
+	static final int DLT_RAW_14 = 14;
+	static final int LINKTYPE_LINUX_SLL = 113;
+	static final int LINKTYPE_IPV4 = 228;
+	static final int LINKTYPE_LINUX_SLL2 = 276;
+	static final int ETHERTYPE_IPV4 = 0x0800;
+	static final int ETHERTYPE_VLAN = 0x8100;
+	static final int ETHERTYPE_QINQ = 0x88a8;
+
+	/*
+	 * Destination addresses of the packets of a pcap file, batch by batch
+	 * Record headers are read in the byte order of the file, packet bytes in network order
+	 */
+	static class pcap_reader{
+		FileChannel channel;
+		long size;
+		//file offset of buf
+		long base=0;
+		MappedByteBuffer buf;
+		int pos=0;
+		//record header fields are byte swapped
+		boolean swapped;
+		public int link_type;
+		public long packets=0;
+		public long skipped=0;
+
+		pcap_reader(String path) throws IOException{
+			channel = FileChannel.open(Paths.get(path),StandardOpenOption.READ);
+			size = channel.size();
+			map(0);
+			if(size<FILE_HEADER){
+				throw new IOException("Not a pcap file :: "+path);
+			}
+			int magic = buf.getInt(0);
+			if(magic==MAGIC_MICROS || magic==MAGIC_NANOS){
+				swapped=false;
+			}else if(Integer.reverseBytes(magic)==MAGIC_MICROS || Integer.reverseBytes(magic)==MAGIC_NANOS){
+				swapped=true;
+			}else{
+				throw new IOException("Not a pcap file (pcapng is not supported) :: "+path);
+			}
+			link_type = header_int(20) & 0xffff;
+			if(link_type!=LINKTYPE_ETHERNET && link_type!=LINKTYPE_RAW && link_type!=DLT_RAW_12 && link_type!=DLT_RAW_14
+					&& link_type!=LINKTYPE_IPV4 && link_type!=LINKTYPE_LINUX_SLL && link_type!=LINKTYPE_LINUX_SLL2){
+				throw new IOException("Unsupported link type "+link_type+" :: "+path);
+			}
+			pos=FILE_HEADER;
+		}
+
+		private void map(long from) throws IOException{
+			base=from;
+			buf=channel.map(FileChannel.MapMode.READ_ONLY,from,Math.min(mapped_loader.WINDOW,size-from));
+			buf.order(ByteOrder.BIG_ENDIAN);
+			pos=0;
+		}
+
+		private int header_int(int at){
+			int v = buf.getInt(at);
+			return swapped ? Integer.reverseBytes(v) : v;
+		}
+
+		/*
+		 * Fill addr with the destinations of the next packets
+		 * Returns the number filled, 0 at the end of the file
+		 */
+		public int next(int addr[]) throws IOException{
+			int count=0;
+			while(count<addr.length){
+				if(pos+RECORD_HEADER>buf.limit()){
+					if(base+pos+RECORD_HEADER>size){
+						break;
+					}
+					map(base+pos);
+				}
+				int captured = header_int(pos+8);
+				if(captured<0 || pos+RECORD_HEADER+captured>buf.limit()){
+					if(captured<0 || base+pos+RECORD_HEADER+captured>size){
+						//capture cut in the middle of a packet
+						break;
+					}
+					if(pos==0){
+						throw new IOException("Packet longer than mapped window");
+					}
+					map(base+pos);
+					continue;
+				}
+				int from = pos+RECORD_HEADER;
+				int to = from+captured;
+				pos=to;
+				packets++;
+				int ip = ip_header(from,to);
+				//version 4 and the whole header up to the destination captured
+				if(ip<0 || ip+20>to || (buf.get(ip) & 0xf0)!=0x40){
+					skipped++;
+					continue;
+				}
+				addr[count++]=buf.getInt(ip+16);
+			}
+			return count;
+		}
+
+		//Offset of the IP header of the packet in buf[from..to), -1 when it does not carry IPv4
+		private int ip_header(int from, int to){
+			int type;
+			int p;
+			switch(link_type){
+			case LINKTYPE_ETHERNET:
+				if(from+14>to){
+					return -1;
+				}
+				type = buf.getShort(from+12) & 0xffff;
+				p = from+14;
+				while((type==ETHERTYPE_VLAN || type==ETHERTYPE_QINQ) && p+4<=to){
+					type = buf.getShort(p+2) & 0xffff;
+					p+=4;
+				}
+				return type==ETHERTYPE_IPV4 ? p : -1;
+			case LINKTYPE_LINUX_SLL:
+				if(from+16>to){
+					return -1;
+				}
+				type = buf.getShort(from+14) & 0xffff;
+				return type==ETHERTYPE_IPV4 ? from+16 : -1;
+			case LINKTYPE_LINUX_SLL2:
+				if(from+20>to){
+					return -1;
+				}
+				type = buf.getShort(from) & 0xffff;
+				return type==ETHERTYPE_IPV4 ? from+20 : -1;
+			default:
+				//raw IP, the version nibble tells IPv4 from IPv6
+				return from;
+			}
+		}
+
+		void close() throws IOException{
+			channel.close();
+		}
+	}
+
+	//Latency at percentile p of the sorted batch latencies, in microseconds
+	private static double percentile(long sorted[], int count, double p){
+		int k = (int)Math.ceil(p/100*count)-1;
+		return sorted[Math.max(0,Math.min(count-1,k))]/1000.0;
+	}
+
+	public static void main(String args[]) throws IOException{
+		if(args.length<2){
+			System.out.println("java pcap_replay <routes> <pcap file> [engine or auto] [batch] [passes] [output file]");
+			return;
+		}
+		String name = args.length>2 ? args[2] : "trie";
+		int batch = args.length>3 ? Integer.parseInt(args[3]) : 256;
+		int passes = args.length>4 ? Integer.parseInt(args[4]) : 5;
+		String outfile = args.length>5 ? args[5] : null;
+		if(batch<1 || passes<2){
+			throw new IllegalArgumentException("batch must be positive and passes at least 2(one warmup pass)");
+		}
+		final engine_selector routes = new engine_selector();
+		long startTime = System.currentTimeMillis();
+		mapped_loader.read_routes(args[0],new mapped_loader.route_handler(){
+			public void route(int prefix, int CIDR, String next_hop){
+				routes.add(prefix,CIDR,next_hop);
+			}
+		});
+		lpm_engine engine = name.equals("auto") ? routes.select(null,64L<<20) : routes.build(name);
+		System.out.println("Routes loaded :: "+routes.size()+" into "+engine.name()+" in "+(System.currentTimeMillis()-startTime)+"ms");
+
+		int addr[] = new int[batch];
+		int result[] = new int[batch];
+		long latency[] = new long[1<<12];
+		int recorded=0;
+		long wall=0, lookup_time=0, measured_packets=0, matched=0;
+		long packets=0, skipped=0;
+		int link_type=0;
+		int_hash destinations = new int_hash();
+		BufferedWriter bw = outfile!=null ?
+				new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outfile),"UTF-8"),1<<20) : null;
+		try{
+			for(int pass=0;pass<passes;pass++){
+				pcap_reader in = new pcap_reader(args[1]);
+				boolean warmup = pass==0;
+				long pass_start = System.nanoTime();
+				try{
+					while(true){
+						int count = in.next(addr);
+						if(count==0){
+							break;
+						}
+						long st = System.nanoTime();
+						int hits = engine.lookup(addr,result,count);
+						long et = System.nanoTime();
+						if(warmup){
+							for(int i=0;i<count;i++){
+								destinations.put(addr[i],0);
+							}
+							if(bw!=null){
+								next_hop_table next_hops = engine.next_hops();
+								for(int i=0;i<count;i++){
+									bw.write("IP :: ");
+									Iplookup.write_addr(bw,addr[i]);
+									bw.write(" Nexthop :: ");
+									bw.write(next_hops.get(result[i]));
+									bw.newLine();
+								}
+							}
+							continue;
+						}
+						if(recorded==latency.length){
+							latency = Arrays.copyOf(latency,latency.length*2);
+						}
+						latency[recorded++]=et-st;
+						lookup_time+=et-st;
+						measured_packets+=count;
+						matched+=hits;
+					}
+				}finally{
+					in.close();
+				}
+				if(warmup){
+					packets=in.packets;
+					skipped=in.skipped;
+					link_type=in.link_type;
+				}else{
+					wall+=System.nanoTime()-pass_start;
+				}
+			}
+		}finally{
+			if(bw!=null){
+				bw.close();
+			}
+		}
+		System.out.println("Capture :: "+packets+" packets (link type "+link_type+") "+skipped+" skipped(not IPv4)"
+				+" "+destinations.size+" distinct destinations");
+		if(recorded==0){
+			System.out.println("No IPv4 packets to replay");
+			return;
+		}
+		long sorted[] = Arrays.copyOf(latency,recorded);
+		Arrays.sort(sorted);
+		System.out.println(String.format("Replay :: %d passes %.2f Mpps (parse and lookup) %.2f Mpps (lookup only) matched %.1f%%",
+				passes-1,measured_packets*1e3/wall,measured_packets*1e3/lookup_time,100.0*matched/measured_packets));
+		System.out.println(String.format("Batch latency(us, %d packets) :: p50 %.2f p90 %.2f p99 %.2f p99.9 %.2f max %.2f (%.1f ns/packet)",
+				batch,percentile(sorted,recorded,50),percentile(sorted,recorded,90),percentile(sorted,recorded,99),
+				percentile(sorted,recorded,99.9),sorted[recorded-1]/1000.0,(double)lookup_time/measured_packets));
+		if(outfile!=null){
+			System.out.println("Output :: "+outfile);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+import java.io.*;
+import java.util.*;
+
+/*
+ * Prefix Generator
+ * Creates synthetic routing tables whose prefix length mix follows a BGP
+ * table (mostly /24, then /22-/23 and /19-/21), with part of the routes
+ * nested under existing ones as more-specifics, and test addresses that
+ * mostly fall inside routed space.
+ * With -6 an IPv6 table is generated instead, shaped like the IPv6 BGP table
+ * (mostly /48, then /32, /44 and /40, all under a few RIR /12 blocks).
+ * To run the program:
+ * java prefix_generator [-6] <routes> <route file> <addresses> <test file> [seed]
+ */
+class prefix_generator{
+	//per mille of routes by prefix length 0..32
+	static final int LENGTH_WEIGHT[] = {
+		0,0,0,0,0,0,0,0,1,1,2,5,10,15,20,25,
+		30,20,35,50,70,70,120,100,420,2,2,1,1,0,0,0,0};
+	//IPv6 prefix lengths and their per mille of routes
+	static final int LENGTH6[] = {28,29,30,31,32,33,34,35,36,38,40,41,42,44,45,46,47,48,56,64};
+	static final int WEIGHT6[] = {10,40,10,5,130,10,10,10,40,10,60,10,15,80,20,30,30,450,15,15};
+	//top 16 bits of the RIR blocks IPv6 routes are drawn from
+	static final int BLOCK6[] = {0x2001,0x2400,0x2401,0x2402,0x2403,0x2404,0x2405,0x2406,0x2407,
+		0x2600,0x2601,0x2602,0x2603,0x2604,0x2605,0x2606,0x2607,0x2800,0x2801,0x2803,
+		0x2a00,0x2a01,0x2a02,0x2a03,0x2a04,0x2a05,0x2a06,0x2a07,0x2a0a,0x2a0b,0x2a0c,0x2a0d,0x2a0e,0x2c0f};
+	//part of the routes created as more-specifics of an earlier route
+	static final double NESTED = 0.3;
+
+	public Random random;
+	public int prefix[];
+	//IPv6 prefixes as high/low pairs
+	public long prefix6[];
+	public int length[];
+	public String next_hop[];
+
+	prefix_generator(long seed){
+		random = new Random(seed);
+	}
+
+	//Random prefix length drawn from LENGTH_WEIGHT
+	private int random_length(){
+		int r = random.nextInt(1000);
+		for(int len=0;len<LENGTH_WEIGHT.length;len++){
+			r-=LENGTH_WEIGHT[len];
+			if(r<0){
+				return len;
+			}
+		}
+		return 24;
+	}
+
+	/*
+	 * Generate n routes using next hops out of a pool of hops addresses
+	 */
+	public void generate_routes(int n, int hops){
+		prefix = new int[n];
+		length = new int[n];
+		next_hop = new String[n];
+		String pool[] = new String[hops];
+		for(int i=0;i<hops;i++){
+			pool[i]=Iplookup.get_dotted(random.nextInt());
+		}
+		for(int i=0;i<n;i++){
+			int len;
+			int addr;
+			if(i>0 && random.nextDouble()<NESTED){
+				int parent = random.nextInt(i);
+				len = Math.min(32,length[parent]+1+random.nextInt(8));
+				int host = length[parent]==0 ? -1 : ~(-1<<(32-length[parent]));
+				addr = (prefix[parent] & ~host) | (random.nextInt() & host);
+			}else{
+				len = random_length();
+				addr = random.nextInt();
+			}
+			prefix[i] = addr & (len==0 ? 0 : -1<<(32-len));
+			length[i] = len;
+			next_hop[i] = pool[random.nextInt(hops)];
+		}
+	}
+
+	/*
+	 * Generate m test addresses, routed_fraction of them inside a generated route
+	 */
+	public int[] generate_addresses(int m, double routed_fraction){
+		int addr[] = new int[m];
+		for(int i=0;i<m;i++){
+			if(random.nextDouble()<routed_fraction){
+				int r = random.nextInt(prefix.length);
+				int host = length[r]==0 ? -1 : ~(-1<<(32-length[r]));
+				addr[i] = prefix[r] | (random.nextInt() & host);
+			}else{
+				addr[i] = random.nextInt();
+			}
+		}
+		return addr;
+	}
+
+	//Random IPv6 prefix length drawn from LENGTH6/WEIGHT6
+	private int random_length6(){
+		int r = random.nextInt(1000);
+		for(int k=0;k<LENGTH6.length;k++){
+			r-=WEIGHT6[k];
+			if(r<0){
+				return LENGTH6[k];
+			}
+		}
+		return 48;
+	}
+
+	//Mask of the first len bits of a 64 bit half, len may be outside 0..64
+	private static long mask6(int len){
+		return len<=0 ? 0 : len>=64 ? -1L : -1L<<(64-len);
+	}
+
+	/*
+	 * Generate n IPv6 routes using next hops out of a pool of hops addresses
+	 */
+	public void generate_routes6(int n, int hops){
+		prefix6 = new long[2*n];
+		length = new int[n];
+		next_hop = new String[n];
+		String pool[] = new String[hops];
+		for(int i=0;i<hops;i++){
+			pool[i]=ipv6_trie.get_text6(random.nextLong(),random.nextLong());
+		}
+		for(int i=0;i<n;i++){
+			int len;
+			long high, low;
+			if(i>0 && random.nextDouble()<NESTED){
+				int parent = random.nextInt(i);
+				len = Math.min(128,length[parent]+1+random.nextInt(8));
+				high = prefix6[2*parent] | (random.nextLong() & ~mask6(length[parent]));
+				low = prefix6[2*parent+1] | (random.nextLong() & ~mask6(length[parent]-64));
+			}else{
+				len = random_length6();
+				high = ((long)BLOCK6[random.nextInt(BLOCK6.length)]<<48) | (random.nextLong()>>>16);
+				low = random.nextLong();
+			}
+			prefix6[2*i] = high & mask6(len);
+			prefix6[2*i+1] = low & mask6(len-64);
+			length[i] = len;
+			next_hop[i] = pool[random.nextInt(hops)];
+		}
+	}
+
+	/*
+	 * Generate m IPv6 test addresses as high/low pairs, routed_fraction of them
+	 * inside a generated route, the rest anywhere under the RIR blocks
+	 */
+	public long[] generate_addresses6(int m, double routed_fraction){
+		long addr[] = new long[2*m];
+		for(int i=0;i<m;i++){
+			if(random.nextDouble()<routed_fraction){
+				int r = random.nextInt(length.length);
+				addr[2*i] = prefix6[2*r] | (random.nextLong() & ~mask6(length[r]));
+				addr[2*i+1] = prefix6[2*r+1] | (random.nextLong() & ~mask6(length[r]-64));
+			}else{
+				addr[2*i] = ((long)BLOCK6[random.nextInt(BLOCK6.length)]<<48) | (random.nextLong()>>>16);
+				addr[2*i+1] = random.nextLong();
+			}
+		}
+		return addr;
+	}
+
+	/*
+	 * Write routes in the prefix/CIDR input format of Iplookup
+	 */
+	public void write_routes(String path) throws IOException{
+		BufferedWriter bw = new BufferedWriter(new FileWriter(path),1<<20);
+		for(int i=0;i<prefix.length;i++){
+			Iplookup.write_addr(bw,prefix[i]);
+			bw.write("/"+length[i]);
+			bw.newLine();
+		}
+		bw.close();
+	}
+
+	//Write addresses one per line
+	public static void write_addresses(String path, int addr[]) throws IOException{
+		BufferedWriter bw = new BufferedWriter(new FileWriter(path),1<<20);
+		for(int i=0;i<addr.length;i++){
+			Iplookup.write_addr(bw,addr[i]);
+			bw.newLine();
+		}
+		bw.close();
+	}
+
+	//Write IPv6 routes in the prefix/CIDR input format of Iplookup
+	public void write_routes6(String path) throws IOException{
+		BufferedWriter bw = new BufferedWriter(new FileWriter(path),1<<20);
+		for(int i=0;i<length.length;i++){
+			ipv6_trie.write_addr6(bw,prefix6[2*i],prefix6[2*i+1]);
+			bw.write("/"+length[i]);
+			bw.newLine();
+		}
+		bw.close();
+	}
+
+	//Write IPv6 addresses one per line
+	public static void write_addresses6(String path, long addr[]) throws IOException{
+		BufferedWriter bw = new BufferedWriter(new FileWriter(path),1<<20);
+		for(int i=0;i<addr.length;i+=2){
+			ipv6_trie.write_addr6(bw,addr[i],addr[i+1]);
+			bw.newLine();
+		}
+		bw.close();
+	}
+
+	public static void main(String args[]) throws IOException{
+		boolean ipv6 = args.length>0 && args[0].equals("-6");
+		if(ipv6){
+			args = Arrays.copyOfRange(args,1,args.length);
+		}
+		if(args.length<4){
+			System.out.println("java prefix_generator [-6] <routes> <route file> <addresses> <test file> [seed]");
+			return;
+		}
+		prefix_generator gen = new prefix_generator(args.length>4 ? Long.parseLong(args[4]) : 1);
+		if(ipv6){
+			gen.generate_routes6(Integer.parseInt(args[0]),256);
+			gen.write_routes6(args[1]);
+			write_addresses6(args[3],gen.generate_addresses6(Integer.parseInt(args[2]),0.8));
+			return;
+		}
+		gen.generate_routes(Integer.parseInt(args[0]),256);
+		gen.write_routes(args[1]);
+		write_addresses(args[3],gen.generate_addresses(Integer.parseInt(args[2]),0.8));
+	}
+}
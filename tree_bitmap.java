@@ -0,0 +1,178 @@
+import java.util.ArrayDeque;
+
+/*
+ * Tree Bitmap
+ * Multibit trie (Eatherton et al.) with stride 6 that stores no expanded
+ * slots. Every node has two bitmaps in a long each:
+ *  internal - bit (1<<len)|bits for every prefix of len 0..5 bits ending in the
+ *             node, so longer prefixes have higher bits
+ *  external - bit c for every 6 bit chunk c that has a child node
+ * Children of a node are stored next to each other, as are the next hops of its
+ * internal prefixes, so a child or next hop is found by Long.bitCount of the
+ * bitmap bits below it. Levels cover bits 0-5, 6-11, ... 30-31, 6 array reads
+ * at most per lookup and 24 bytes per node plus 4 per prefix.
+ * Routes are collected by insert and laid out by build().
+ */
+class tree_bitmap implements lpm_engine{
+	static final int STRIDE = 6;
+	static final int LEVELS = 6;
+	//MATCH[c] has the internal bits of every prefix the chunk c matches
+	private static final long MATCH[] = new long[64];
+	static{
+		for(int c=0;c<64;c++){
+			for(int len=0;len<STRIDE;len++){
+				MATCH[c] |= 1L<<((1<<len)|(c>>>(STRIDE-len)));
+			}
+		}
+	}
+
+	public long internal[];
+	public long external[];
+	//index of the first child node and of the first next hop of every node
+	public int child_base[];
+	public int result_base[];
+	//next hop ids of internal prefixes
+	public int hop[];
+	public int node_count=0;
+	public next_hop_table next_hops;
+	private build_node root = new build_node();
+	//sizes of the arrays build() fills
+	private int build_nodes=1;
+	private int build_prefixes=0;
+
+	tree_bitmap(){
+		this(Iplookup.next_hops);
+	}
+
+	tree_bitmap(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Node of the tree while routes are inserted
+	 * hop and child are indexed by bitmap bit and created on first use
+	 */
+	private static class build_node{
+		long internal;
+		long external;
+		int hop[];
+		build_node child[];
+	}
+
+	//6 bit chunk of the address for the level, the last level has 2 bits padded with 0
+	private static int chunk(int addr, int level){
+		return level<LEVELS-1 ? (addr>>>(26-STRIDE*level)) & 63 : (addr & 3)<<4;
+	}
+
+	/*
+	 * Add network prefix of CIDR length
+	 * Tables are filled by build()
+	 */
+	public void insert(int prefix, int CIDR, String next_hop){
+		insert(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void insert(int prefix, int CIDR, int next_hop){
+		if(root==null){
+			throw new IllegalStateException("Tree bitmap already built");
+		}
+		build_node temp=root;
+		int level=0;
+		while(CIDR-STRIDE*level>=STRIDE){
+			int c = chunk(prefix,level);
+			if(temp.child==null){
+				temp.child=new build_node[64];
+			}
+			if(temp.child[c]==null){
+				temp.child[c]=new build_node();
+				temp.external |= 1L<<c;
+				build_nodes++;
+			}
+			temp=temp.child[c];
+			level++;
+		}
+		int len = CIDR-STRIDE*level;
+		int pos = (1<<len)|(chunk(prefix,level)>>>(STRIDE-len));
+		if(temp.hop==null){
+			temp.hop=new int[64];
+		}
+		if((temp.internal & (1L<<pos))==0){
+			temp.internal |= 1L<<pos;
+			build_prefixes++;
+		}
+		temp.hop[pos]=next_hop;
+	}
+
+	/*
+	 * Lay the nodes out breadth first, so the children of every node and the
+	 * next hops of its prefixes are contiguous
+	 */
+	public void build(){
+		ArrayDeque<build_node> queue = new ArrayDeque<build_node>();
+		queue.add(root);
+		internal = new long[build_nodes];
+		external = new long[build_nodes];
+		child_base = new int[build_nodes];
+		result_base = new int[build_nodes];
+		hop = new int[build_prefixes];
+		int next_child=1;
+		int next_hop=0;
+		while(!queue.isEmpty()){
+			build_node n = queue.poll();
+			int i = node_count++;
+			internal[i]=n.internal;
+			external[i]=n.external;
+			child_base[i]=next_child;
+			result_base[i]=next_hop;
+			for(long bits=n.internal;bits!=0;bits&=bits-1){
+				hop[next_hop++]=n.hop[Long.numberOfTrailingZeros(bits)];
+			}
+			for(long bits=n.external;bits!=0;bits&=bits-1){
+				queue.add(n.child[Long.numberOfTrailingZeros(bits)]);
+				next_child++;
+			}
+		}
+		root=null;
+	}
+
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Returns next hop id, NO_ROUTE when no prefix matched
+	 */
+	public int lookup(int addr){
+		int next_hop=next_hop_table.NO_ROUTE;
+		int n=0;
+		for(int level=0;;level++){
+			int c = chunk(addr,level);
+			long node_internal = internal[n];
+			long match = node_internal & MATCH[c];
+			if(match!=0){
+				//highest bit is the longest prefix
+				int pos = 63-Long.numberOfLeadingZeros(match);
+				next_hop = hop[result_base[n]+Long.bitCount(node_internal & ((1L<<pos)-1))];
+			}
+			long node_external = external[n];
+			if(((node_external>>>c) & 1)==0){
+				return next_hop;
+			}
+			n = child_base[n]+Long.bitCount(node_external & ((1L<<c)-1));
+		}
+	}
+
+	//Memory used by the node and next hop arrays in bytes
+	public long footprint(){
+		return 24L*internal.length+4L*hop.length;
+	}
+
+	public String describe(){
+		return "Tree Bitmap memory :: "+footprint()/1024+"KB ("+node_count+" nodes, "+hop.length+" prefixes)";
+	}
+
+	public String name(){
+		return "bitmap";
+	}
+
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+}
@@ -0,0 +1,321 @@
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/*
+ * Trie Class 
+ * Create Binary tree to store network prefix in Bit format
+ * Perform lookup operation
+ * Display Tree
+ * Tree Insertion
+ * Live route add/delete/change with copy-on-write paths, so lookups never block
+ */
+
+class trie implements lpm_engine{
+	//replaced as a whole by live updates, read once per lookup
+	public volatile node root=new node(null,null,"R",false,next_hop_table.NO_ROUTE);
+	public next_hop_table next_hops;
+	public ArrayList<String> out = new ArrayList<String>();
+	public int count=0;
+	//flow caches in front of this tree, invalidated by live updates
+	private CopyOnWriteArrayList<flow_cache> caches = new CopyOnWriteArrayList<flow_cache>();
+	//counters fed by every lookup when set, set before lookups start
+	public lookup_stats stats;
+	
+	trie(){
+		this(Iplookup.next_hops);
+	}
+	
+	trie(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+	
+	/*
+	 * Insert Ip address to Binary Tree
+	 * Changes nodes in place, only for building the tree before lookups start
+	 */
+	public void insert(String value,String next_hop){
+		String bin_val=value;
+		
+		node  temp =root;
+		//System.out.println("bin string:: "+bin_val+" length:: "+bin_val.length());
+		char []bin_val_array = bin_val.toCharArray();
+		
+		for (int i=0;i<bin_val_array.length;i++){
+			if(bin_val_array[i] == '1'){
+				if( temp.right!=null){
+					temp=temp.right;
+				}else{
+					temp.right = new node(null,null,"1",false,next_hop_table.NO_ROUTE); 
+					temp=temp.right;
+				}
+			}
+			else{
+				if(temp.left!=null){
+					temp=temp.left;
+				}
+				else{
+					temp.left=new node(null,null,"0",false,next_hop_table.NO_ROUTE);
+					temp=temp.left;
+				}
+			}
+		}
+		temp.ind=true;
+		temp.next_hop=next_hops.intern(next_hop);
+		//display(root);
+	}
+	
+	/*
+	 * Insert network prefix of CIDR length with a next hop id, same rules as insert
+	 * next_hop may be NO_ROUTE, which stops a covering prefix from matching here
+	 */
+	public void insert(int prefix, int CIDR, int next_hop){
+		node temp=root;
+		for(int i=0;i<CIDR;i++){
+			if(((prefix>>>(31-i)) & 1)==1){
+				if(temp.right==null){
+					temp.right=new node(null,null,"1",false,next_hop_table.NO_ROUTE);
+				}
+				temp=temp.right;
+			}else{
+				if(temp.left==null){
+					temp.left=new node(null,null,"0",false,next_hop_table.NO_ROUTE);
+				}
+				temp=temp.left;
+			}
+		}
+		temp.ind=true;
+		temp.next_hop=next_hop;
+	}
+	
+	/*
+	 * Add route or replace next hop of an existing route while lookups run
+	 * Nodes on the path are copied and the new root is published in one write,
+	 * nodes reachable from the old root are never changed
+	 */
+	public synchronized void add_route(int prefix, int CIDR, String next_hop){
+		int id = next_hops.intern(next_hop);
+		node path[] = find_path(prefix,CIDR);
+		node target = path[CIDR];
+		node copy = new node(target==null ? null : target.left, target==null ? null : target.right,
+				node_val(prefix,CIDR), true, id);
+		root = copy_path(path,prefix,CIDR,copy);
+		invalidate_caches();
+	}
+	
+	/*
+	 * Next hop of the route prefix/CIDR (exact match), null when not present
+	 */
+	public String get_route(int prefix, int CIDR){
+		node target = find_path(prefix,CIDR)[CIDR];
+		return target!=null && target.ind ? next_hops.get(target.next_hop) : null;
+	}
+	
+	/*
+	 * Change next hop of an existing route
+	 * Returns false when the route is not present
+	 */
+	public synchronized boolean change_route(int prefix, int CIDR, String next_hop){
+		node target = find_path(prefix,CIDR)[CIDR];
+		if(target==null || !target.ind){
+			return false;
+		}
+		add_route(prefix,CIDR,next_hop);
+		return true;
+	}
+	
+	/*
+	 * Withdraw route while lookups run
+	 * Nodes left without route and children are dropped from the copied path
+	 * Returns false when the route is not present
+	 */
+	public synchronized boolean delete_route(int prefix, int CIDR){
+		node path[] = find_path(prefix,CIDR);
+		node target = path[CIDR];
+		if(target==null || !target.ind){
+			return false;
+		}
+		node copy = null;
+		if(CIDR==0 || target.left!=null || target.right!=null){
+			copy = new node(target.left,target.right,target.val,false,next_hop_table.NO_ROUTE);
+		}
+		root = copy_path(path,prefix,CIDR,copy);
+		invalidate_caches();
+		return true;
+	}
+	
+	/*
+	 * Register a flow cache to be invalidated on every live update
+	 */
+	public void add_cache(flow_cache cache){
+		caches.add(cache);
+	}
+	
+	//Called after the new root is published
+	private void invalidate_caches(){
+		for(flow_cache cache: caches){
+			cache.invalidate();
+		}
+	}
+	
+	//Nodes from root to prefix/CIDR, null where the path ends
+	private node[] find_path(int prefix, int CIDR){
+		node path[] = new node[CIDR+1];
+		node temp = root;
+		path[0]=temp;
+		for(int i=0;i<CIDR && temp!=null;i++){
+			temp = ((prefix>>>(31-i)) & 1)==1 ? temp.right : temp.left;
+			path[i+1]=temp;
+		}
+		return path;
+	}
+	
+	/*
+	 * Copy the path above depth CIDR bottom up, linking in the new node at depth CIDR
+	 * Copies that end up without route and children are dropped, except the root
+	 * Returns the new root
+	 */
+	private node copy_path(node path[], int prefix, int CIDR, node copy){
+		for(int i=CIDR-1;i>=0;i--){
+			node parent = path[i];
+			boolean right_bit = ((prefix>>>(31-i)) & 1)==1;
+			node left = right_bit ? (parent==null ? null : parent.left) : copy;
+			node right = right_bit ? copy : (parent==null ? null : parent.right);
+			if(i>0 && left==null && right==null && (parent==null || !parent.ind)){
+				copy = null;
+			}else if(parent==null){
+				copy = new node(left,right,node_val(prefix,i),false,next_hop_table.NO_ROUTE);
+			}else{
+				copy = new node(left,right,parent.val,parent.ind,parent.next_hop);
+			}
+		}
+		return copy;
+	}
+	
+	//Value shown by display() for the node at depth
+	private static String node_val(int prefix, int depth){
+		if(depth==0){
+			return "R";
+		}
+		return ((prefix>>>(32-depth)) & 1)==1 ? "1" : "0";
+	}
+	
+	//Number of nodes in the tree
+	public int node_count(node root){
+		int nodes=1;
+		if(root.left!=null){
+			nodes+=node_count(root.left);
+		}
+		if(root.right!=null){
+			nodes+=node_count(root.right);
+		}
+		return nodes;
+	}
+	
+	/*
+	 *Display Trie Tree 
+	 */
+	public void display(node root){
+			System.out.println(" "+root.val);
+			if(root.ind){
+				System.out.println("Next hop::"+next_hops.get(root.next_hop));
+			}
+			if(root.left!=null){
+				display(root.left);
+			}
+			if(root.right!=null){
+				display(root.right);
+			}
+			
+	}
+	
+	/*
+	 * Estimated memory used by the tree in bytes
+	 * 32 bytes per node object, next hops live in the shared next_hop_table
+	 */
+	public long footprint(node root){
+		return 32L*node_count(root);
+	}
+	
+	public long footprint(){
+		return footprint(root);
+	}
+	
+	public String describe(){
+		return "Trie nodes :: "+node_count(root)+" memory :: "+footprint()/1024+"KB";
+	}
+	
+	public String name(){
+		return "trie";
+	}
+	
+	//nodes are created by insert
+	public void build(){
+	}
+	
+	public next_hop_table next_hops(){
+		return next_hops;
+	}
+	
+	/*
+	 * Perform Trie Lookup operation
+	 * finds Longest prefix Match for the dotted-quad input present in the tree
+	 * Thin wrapper over lookup(int) that records the result in out
+	 */
+	public void trie_lookup(String input){
+		int next_hop = lookup(Iplookup.parse_addr(input));
+		out.add(next_hops.get(next_hop));
+		if(next_hop!=next_hop_table.NO_ROUTE){
+			count+=1;
+		}
+	}
+	
+	/*
+	 * Longest prefix match for a 32 bit address
+	 * Walks the tree one bit at a time from the most significant bit
+	 * Returns next hop id, NO_ROUTE when no prefix matched, allocates nothing
+	 */
+	public int lookup(int addr){
+		//one read of root, so a concurrent update is seen entirely or not at all
+		node temp=root;
+		int next_hop = temp.ind ? temp.next_hop : next_hop_table.NO_ROUTE;
+		int depth=0;
+		for(int i=31;i>=0;i--){
+			temp = ((addr>>>i) & 1)==1 ? temp.right : temp.left;
+			if(temp==null){
+				break;
+			}
+			depth++;
+			if(temp.ind){
+				next_hop=temp.next_hop;
+			}
+		}
+		lookup_stats s = stats;
+		if(s!=null){
+			s.record(depth,next_hop==next_hop_table.NO_ROUTE);
+		}
+		return next_hop;
+	}
+	
+	/*
+	 * Counters of this tree's lookups, registered as an MBean
+	 * Node count and footprint walk the current tree when read
+	 */
+	public lookup_stats enable_stats(String engine){
+		lookup_stats s = new lookup_stats(engine,new LongSupplier(){
+			public long getAsLong(){
+				return node_count(root);
+			}
+		},new LongSupplier(){
+			public long getAsLong(){
+				return footprint(root);
+			}
+		});
+		s.register();
+		stats=s;
+		return s;
+	}
+	
+	
+
+}
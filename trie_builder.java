@@ -0,0 +1,160 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Trie Builder
+ * Builds the nodes of a trie from all routes at once instead of one insert
+ * walk per route. Routes are packed into long keys (masked prefix, CIDR, add
+ * order), sorted, and the sorted range is split on one address bit per level,
+ * creating every node once, children before parents.
+ * Subtrees with more than THRESHOLD routes are built as fork-join tasks, so
+ * the independent top-level subtrees are built on all cores.
+ * A prefix added twice keeps the next hop added last, as with trie.insert.
+ */
+class trie_builder{
+	//routes below which a subtree is built by the current task
+	static final int THRESHOLD = 1<<12;
+	//add order is kept in the low 26 bits of a key
+	static final int MAX_ROUTES = 1<<26;
+
+	public next_hop_table next_hops;
+	private long keys[] = new long[1024];
+	private int hops[] = new int[1024];
+	private int count=0;
+
+	trie_builder(){
+		this(Iplookup.next_hops);
+	}
+
+	trie_builder(next_hop_table next_hops){
+		this.next_hops=next_hops;
+	}
+
+	/*
+	 * Add network prefix of CIDR length
+	 * Nodes are created by build()
+	 */
+	public void add(int prefix, int CIDR, String next_hop){
+		add(prefix,CIDR,next_hops.intern(next_hop));
+	}
+
+	public void add(int prefix, int CIDR, int next_hop){
+		if(count==MAX_ROUTES){
+			throw new IllegalStateException("More than "+MAX_ROUTES+" routes");
+		}
+		if(count==keys.length){
+			keys = Arrays.copyOf(keys,count*2);
+			hops = Arrays.copyOf(hops,count*2);
+		}
+		long masked = prefix & (CIDR==0 ? 0 : -1<<(32-CIDR)) & 0xffffffffL;
+		//sign bit flipped so the signed sort orders prefixes unsigned
+		keys[count] = (masked<<32 | (long)CIDR<<26 | count) ^ Long.MIN_VALUE;
+		hops[count] = next_hop;
+		count++;
+	}
+
+	public int size(){
+		return count;
+	}
+
+	/*
+	 * Sort the routes and build the tree with threads workers
+	 * Returns the root, which always exists
+	 */
+	public node build(int threads){
+		long sorted[] = Arrays.copyOf(keys,count);
+		Arrays.parallelSort(sorted);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try{
+			return pool.invoke(new subtree(sorted,0,count,0,"R"));
+		}finally{
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Build a trie with the routes added so far
+	 */
+	public trie build_trie(int threads){
+		trie lp_trie = new trie(next_hops);
+		lp_trie.root = build(threads);
+		return lp_trie;
+	}
+
+	private static int prefix(long key){
+		return (int)((key^Long.MIN_VALUE)>>>32);
+	}
+
+	private static int cidr(long key){
+		return (int)(key>>>26) & 63;
+	}
+
+	/*
+	 * Node at depth for the sorted keys [from, to), which share their first depth bits
+	 */
+	class subtree extends RecursiveTask<node>{
+		private static final long serialVersionUID = 1L;
+		long sorted[];
+		int from;
+		int to;
+		int depth;
+		//"R", "0" or "1", as shown by trie.display
+		String val;
+
+		subtree(long sorted[], int from, int to, int depth, String val){
+			this.sorted=sorted;
+			this.from=from;
+			this.to=to;
+			this.depth=depth;
+			this.val=val;
+		}
+
+		@Override
+		protected node compute(){
+			return build(from,to,depth,val);
+		}
+
+		private node build(int from, int to, int depth, String val){
+			if(from==to && depth>0){
+				return null;
+			}
+			//a prefix ending here sorts first: its remaining bits are 0 and its CIDR smallest
+			boolean ind=false;
+			int next_hop=next_hop_table.NO_ROUTE;
+			while(from<to && cidr(sorted[from])==depth){
+				ind=true;
+				next_hop=hops[(int)(sorted[from] & (MAX_ROUTES-1))];
+				from++;
+			}
+			node left=null, right=null;
+			if(depth<32 && from<to){
+				int split = first_one(from,to,31-depth);
+				if(split-from>THRESHOLD && to-split>THRESHOLD){
+					subtree task = new subtree(sorted,from,split,depth+1,"0");
+					task.fork();
+					right = build(split,to,depth+1,"1");
+					left = task.join();
+				}else{
+					left = build(from,split,depth+1,"0");
+					right = build(split,to,depth+1,"1");
+				}
+			}
+			return new node(left,right,val,ind,next_hop);
+		}
+
+		//First key in [from, to) with the address bit set, keys are sorted
+		private int first_one(int from, int to, int bit){
+			int lo=from, hi=to;
+			while(lo<hi){
+				int mid=(lo+hi)>>>1;
+				if(((prefix(sorted[mid])>>>bit) & 1)==1){
+					hi=mid;
+				}else{
+					lo=mid+1;
+				}
+			}
+			return lo;
+		}
+	}
+}
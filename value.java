@@ -0,0 +1,13 @@
+/*
+ * Value class
+ * Stores value(Next hop id, CIDR) of routing table
+ */
+class value{
+	int nexthop;
+	int CIDR;
+	
+	value(int nexthop,int CIDR){
+		this.nexthop=nexthop;
+		this.CIDR=CIDR;
+	}
+}